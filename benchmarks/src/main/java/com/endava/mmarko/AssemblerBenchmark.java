@@ -0,0 +1,54 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// whole sources, read from memory and written to nowhere, so only the assembler itself is measured
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssemblerBenchmark {
+  @Param({"10000", "200000", "2000000"})
+  public int lines;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  @Param({"LISTING", "OBJECT"})
+  public OutputFormat format;
+
+  private ByteBuffer source;
+
+  @Setup
+  public void setup() {
+    String program = new ProgramGenerator().lines(lines).sections(Math.max(1, lines / 500)).generate();
+    source = ByteBuffer.wrap(program.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public List<ParsedLine> firstPass() throws IOException, SyntaxError {
+    try (AssemblerImpl assembler = assembler()) {
+      return assembler.firstPass();
+    }
+  }
+
+  @Benchmark
+  public void assemble() throws IOException, SyntaxError {
+    try (AssemblerImpl assembler = assembler()) {
+      assembler.secondPass(assembler.firstPass());
+    }
+  }
+
+  private AssemblerImpl assembler() {
+    return new AssemblerImpl(new SourceReader(source.duplicate()),
+        OutputWriter.create(OutputStream.nullOutputStream(), format), parallelism, null);
+  }
+}
@@ -0,0 +1,52 @@
+package com.endava.mmarko;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InstructionParserBenchmark {
+  @Param({"halt", "movb r4h, r5l", "addw r1, 5", "mov r1, r3[12]", "mov r0, *0x100", "movw r1, &data_start",
+      "jmp $label2"})
+  public String instruction;
+
+  // symbols encode as 0, relocations aren't part of the instruction encoding
+  private static final OperandResolver RESOLVER = new OperandResolver() {
+    @Override
+    public int resolve(String symbol, RelocationType relocationType, boolean constantAllowed,
+                       int offset, SectionInfo section) {
+      return 0;
+    }
+
+    @Override
+    public int resolve(Expression expression, int index, int size, SectionInfo section) {
+      return 0;
+    }
+  };
+
+  private final LineCursor cursor = new LineCursor();
+  private InstructionParser parsed;
+
+  @Setup
+  public void setup() throws SyntaxError {
+    parsed = decode();
+  }
+
+  @Benchmark
+  public InstructionParser decode() throws SyntaxError {
+    cursor.reset(instruction);
+    return new InstructionParser(cursor);
+  }
+
+  // includes the section the instruction is encoded into
+  @Benchmark
+  public SectionInfo encode() throws SyntaxError {
+    SectionInfo section = new SectionInfo(0, "text");
+    parsed.encode(0, section, RESOLVER);
+    return section;
+  }
+}
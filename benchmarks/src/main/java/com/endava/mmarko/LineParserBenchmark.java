@@ -0,0 +1,29 @@
+package com.endava.mmarko;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineParserBenchmark {
+  @Param({"main:   movw r1, &data_start   ; imm symbol", "        mov r1, r3[12]",
+      "data_start: .word 0x1234, 7, SIZE", ".equ LIMIT, 100", ".section mysec, rwx"})
+  public String line;
+
+  private final LineParser parser = new LineParser();
+
+  @Benchmark
+  public LineParser construct() {
+    return new LineParser();
+  }
+
+  @Benchmark
+  public LineParser.LineType parse() throws SyntaxError {
+    parser.parse(line);
+    return parser.getType();
+  }
+}
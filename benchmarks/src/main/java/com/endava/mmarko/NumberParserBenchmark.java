@@ -0,0 +1,39 @@
+package com.endava.mmarko;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumberParserBenchmark {
+  private int value;
+
+  @State(Scope.Thread)
+  public static class Section {
+    @Param({"16", "4096"})
+    public int bytes;
+
+    byte[] content;
+
+    @Setup
+    public void setup() {
+      content = new byte[bytes];
+      new Random(42).nextBytes(content);
+    }
+  }
+
+  @Benchmark
+  public String toHex() {
+    return NumberParser.toHex(value++ & 0xFFFF, 2);
+  }
+
+  @Benchmark
+  public String format(Section section) {
+    return NumberParser.format(section.content, section.content.length);
+  }
+}
@@ -0,0 +1,44 @@
+package com.endava.mmarko;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SymbolTableBenchmark {
+  @Param({"16", "1024", "65536"})
+  public int size;
+
+  private final SymbolTable table = new SymbolTable();
+  // looked up round robin, sizes are powers of 2
+  private String[] labels;
+  private String[] missing;
+  private int next;
+
+  @Setup
+  public void setup() throws SyntaxError {
+    labels = new String[size];
+    missing = new String[size];
+    SectionLocation location = new SectionLocation();
+    location.incrementSection();
+    for (int i = 0; i < size; i++) {
+      table.add("label_" + i, location);
+      labels[i] = "label_" + i;
+      missing[i] = "missing_" + i;
+    }
+  }
+
+  @Benchmark
+  public Symbol findDefined() {
+    return table.find(labels[next++ & (size - 1)]);
+  }
+
+  @Benchmark
+  public Symbol findMissing() {
+    return table.find(missing[next++ & (size - 1)]);
+  }
+}
@@ -1,18 +1,169 @@
 package com.endava.mmarko;
 
 import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class App {
+  // usage: [-f listing|object] [--one-pass] [--cache-dir <dir> | --stats | --stats-json] -o <output> <input>
+  //        [-f listing|object] [--one-pass] [--cache-dir <dir>] --batch [-j <threads>] (<input> | @<manifest>)...
+  //        [-f listing|object] [--one-pass] --client [--port <port>] (<input> | @<manifest>)...
+  //        --server [--port <port>] [-j <threads>]
+  //        --shutdown [--port <port>]
+  // with a cache directory, outputs of sources that were assembled before are copied from there,
+  // --stats prints where the time went and what was produced, --stats-json prints the same as json
+  // --client and --shutdown authenticate with the token the server wrote for the port, see AssemblerServer
   public static void main(String[] args) {
-    if (args.length != 3 || !"-o".equals(args[0])) {
+    List<String> inputs = new ArrayList<>();
+    String output = null;
+    String cacheDir = null;
+    OutputFormat format = OutputFormat.LISTING;
+    boolean onePass = false;
+    boolean batch = false;
+    boolean client = false;
+    boolean server = false;
+    boolean shutdown = false;
+    boolean stats = false;
+    boolean json = false;
+    int port = AssemblerServer.DEFAULT_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean valid = true;
+
+    for (int i = 0; i < args.length; i++) {
+      if ("-o".equals(args[i]) && i + 1 < args.length) output = args[++i];
+      else if ("-f".equals(args[i]) && i + 1 < args.length) format = parseFormat(args[++i]);
+      else if ("-j".equals(args[i]) && i + 1 < args.length) threads = parseNumber(args[++i]);
+      else if ("--port".equals(args[i]) && i + 1 < args.length) port = parseNumber(args[++i]);
+      else if ("--cache-dir".equals(args[i]) && i + 1 < args.length) cacheDir = args[++i];
+      else if ("--one-pass".equals(args[i])) onePass = true;
+      else if ("--batch".equals(args[i])) batch = true;
+      else if ("--client".equals(args[i])) client = true;
+      else if ("--server".equals(args[i])) server = true;
+      else if ("--shutdown".equals(args[i])) shutdown = true;
+      else if ("--stats".equals(args[i])) stats = true;
+      else if ("--stats-json".equals(args[i])) stats = json = true;
+      else if (!args[i].startsWith("-")) inputs.add(args[i]);
+      else valid = false;
+    }
+
+    if (server || shutdown) valid = valid && output == null && inputs.isEmpty() && threads > 0 && port > 0
+        && cacheDir == null;
+    else if (batch || client) valid = valid && output == null && !inputs.isEmpty() && threads > 0 && port > 0;
+    else valid = valid && output != null && inputs.size() == 1 && !(stats && cacheDir != null);
+    if (batch || client || server || shutdown) valid = valid && !stats;
+
+    if (!valid || format == null || (batch ? 1 : 0) + (client ? 1 : 0) + (server ? 1 : 0) + (shutdown ? 1 : 0) > 1) {
       System.out.println("bad arguments");
       return;
     }
 
-   try(Assembler as = new AssemblerImpl(args[2], args[1])) {
+    if (server) {
+      serve(port, threads);
+      return;
+    }
+    if (shutdown) {
+      try {
+        new AssemblerClient(port).shutdown();
+      } catch (IOException e) {
+        System.out.println("Server not running");
+      }
+      return;
+    }
+
+    AssemblerFactory factory = AssemblerFactory.of(format, onePass);
+    if (cacheDir != null) {
+      try {
+        factory = new AssemblyCache(cacheDir).wrap(factory, format);
+      } catch (IOException e) {
+        System.out.println("Bad Cache Directory");
+        return;
+      }
+    }
+    if (batch || client) {
+      int status = assembleBatch(factory, inputs, format, onePass, threads, client ? port : 0);
+      if (status != BatchAssembler.OK) System.exit(status);
+      return;
+    }
+
+    AssemblyStats assemblyStats = stats ? new AssemblyStats() : null;
+    try (Assembler as = stats ? create(inputs.get(0), output, format, onePass, assemblyStats)
+        : factory.create(inputs.get(0), output)) {
       as.assemble();
+    } catch (SyntaxError e) {
+      System.out.println(e.report());
+      System.exit(BatchAssembler.SYNTAX_ERROR);
     } catch (IOException e) {
       System.out.println("Bad Files");
+      return;
+    }
+    if (stats) System.out.println(json ? assemblyStats.toJson() : assemblyStats.toString());
+  }
+
+  private static Assembler create(String input, String output, OutputFormat format, boolean onePass,
+                                  AssemblyStats stats) throws IOException {
+    BaseAssembler assembler = onePass
+        ? new OnePassAssembler(input, output, format) : new AssemblerImpl(input, output, format);
+    assembler.collectStats(stats);
+    return assembler;
+  }
+
+  private static void serve(int port, int threads) {
+    try (AssemblerServer server = new AssemblerServer(port, threads)) {
+      System.out.println("listening on port " + server.getPort());
+      server.serve();
+    } catch (IOException e) {
+      System.out.println("Can't start server: " + e.getMessage());
+      System.exit(BatchAssembler.BAD_FILES);
+    }
+  }
+
+  // port 0 assembles in this process, otherwise the jobs go to the server, or run here if it isn't up
+  private static int assembleBatch(AssemblerFactory factory, List<String> inputs, OutputFormat format,
+                                   boolean onePass, int threads, int port) {
+    List<BatchAssembler.Job> jobs = new ArrayList<>();
+    try {
+      for (String input : inputs) {
+        if (input.startsWith("@")) jobs.addAll(BatchAssembler.readManifest(input.substring(1), format));
+        else jobs.add(new BatchAssembler.Job(input, BatchAssembler.defaultOutput(input, format)));
+      }
+    } catch (IOException e) {
+      System.out.println("Bad Manifest");
+      return BatchAssembler.BAD_FILES;
+    }
+
+    try {
+      List<BatchAssembler.Result> results = null;
+      if (port > 0) {
+        try {
+          results = new AssemblerClient(port).assemble(jobs, format, onePass);
+        } catch (ConnectException e) {
+          // no server, assemble here
+        } catch (IOException e) {
+          System.out.println("Server error: " + e.getMessage());
+          return BatchAssembler.INTERNAL_ERROR;
+        }
+      }
+      if (results == null) results = new BatchAssembler(factory, threads).run(jobs);
+      for (BatchAssembler.Result result : results) System.out.println(result);
+      return BatchAssembler.exitStatus(results);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return BatchAssembler.INTERNAL_ERROR;
+    }
+  }
+
+  private static OutputFormat parseFormat(String name) {
+    for (OutputFormat format : OutputFormat.values())
+      if (format.toString().equals(name)) return format;
+    return null;
+  }
+
+  private static int parseNumber(String number) {
+    try {
+      return Integer.parseInt(number);
+    } catch (NumberFormatException e) {
+      return 0;
     }
   }
 }
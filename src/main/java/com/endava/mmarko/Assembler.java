@@ -1,17 +1,14 @@
 package com.endava.mmarko;
 
 import java.io.IOException;
-import java.util.List;
+import java.nio.file.Path;
+import java.util.Collection;
 
 interface Assembler extends AutoCloseable {
-  default void assemble() throws IOException {
-      List<String> firstPassOutput = firstPass();
-      secondPass(firstPassOutput);
-  }
+  void assemble() throws IOException, SyntaxError;
 
-  List<String> firstPass() throws IOException;
-
-  void secondPass(List<String> firstPassOutput) throws IOException;
+  // absolute paths of the files assemble() included, each once
+  Collection<Path> getIncludedFiles();
 
   @Override
   void close() throws IOException;
@@ -0,0 +1,82 @@
+package com.endava.mmarko;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// sends batches to a running AssemblerServer, see there for the protocol
+class AssemblerClient {
+  private final int port;
+  private final Path tokenDirectory;
+
+  AssemblerClient(int port) {
+    this(port, AssemblerServer.defaultTokenDirectory());
+  }
+
+  AssemblerClient(int port, Path tokenDirectory) {
+    this.port = port;
+    this.tokenDirectory = tokenDirectory;
+  }
+
+  // results are in the same order as the jobs, the times are measured by the server
+  List<BatchAssembler.Result> assemble(List<BatchAssembler.Job> jobs, OutputFormat format, boolean onePass)
+      throws IOException {
+    try (Socket socket = connect();
+         BufferedReader in = new BufferedReader(
+             new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         Writer out = new BufferedWriter(
+             new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      out.write(AssemblerServer.ASSEMBLE + "\t" + format + "\t"
+          + (onePass ? AssemblerServer.ONE_PASS : AssemblerServer.TWO_PASS) + "\t" + jobs.size() + "\n");
+      for (BatchAssembler.Job job : jobs) {
+        out.write(new File(job.input).getAbsolutePath() + "\t" + new File(job.output).getAbsolutePath() + "\n");
+      }
+      out.flush();
+
+      List<BatchAssembler.Result> results = new ArrayList<>();
+      for (BatchAssembler.Job job : jobs) {
+        String line = in.readLine();
+        if (line == null) throw new IOException("Server closed the connection");
+        String[] fields = line.split("\t", 3);
+        if (fields.length != 3) throw new IOException("Bad response: " + line);
+        String message = fields[2].isEmpty() ? null : AssemblerServer.unescape(fields[2]);
+        results.add(new BatchAssembler.Result(job, Integer.parseInt(fields[0]), message, Long.parseLong(fields[1])));
+      }
+      return results;
+    }
+  }
+
+  void shutdown() throws IOException {
+    try (Socket socket = connect(); Writer out = new OutputStreamWriter(socket.getOutputStream(),
+        StandardCharsets.UTF_8)) {
+      out.write(AssemblerServer.SHUTDOWN + "\n");
+    }
+  }
+
+  // a connection that has sent the server's token already, without a token there's no server to talk to
+  private Socket connect() throws IOException {
+    byte[] token;
+    try {
+      token = Files.readAllBytes(AssemblerServer.tokenFile(tokenDirectory, port));
+    } catch (NoSuchFileException e) {
+      throw new ConnectException("No token for port " + port);
+    }
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(token);
+      out.write('\n');
+      return socket;
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.endava.mmarko;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// flight recorder events, e.g. java -XX:StartFlightRecording:filename=asm.jfr -jar ...
+// Unless a recording is running an event is never filled in, so the per line events cost about
+// as much as the two calls that start and end them. Slow lines are only recorded over their threshold,
+// which a recording can change with com.endava.mmarko.SlowLine#threshold=<time>.
+final class AssemblerEvents {
+  private AssemblerEvents() {
+  }
+
+  @Name("com.endava.mmarko.Assembly")
+  @Label("Assembly")
+  @Category("Assembler")
+  @Description("One source assembled from start to finish")
+  @StackTrace(false)
+  static final class Assembly extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Successful")
+    boolean successful;
+
+    void record(String source, boolean successful) {
+      if (!shouldCommit()) return;
+      this.source = source;
+      this.successful = successful;
+      commit();
+    }
+  }
+
+  @Name("com.endava.mmarko.Pass")
+  @Label("Pass")
+  @Category("Assembler")
+  @StackTrace(false)
+  static final class Pass extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Pass")
+    String pass;
+
+    void record(String source, String pass) {
+      if (!shouldCommit()) return;
+      this.source = source;
+      this.pass = pass;
+      commit();
+    }
+  }
+
+  @Name("com.endava.mmarko.Section")
+  @Label("Section Encoded")
+  @Category("Assembler")
+  @Description("One section encoded by the second pass, on the thread that encoded it")
+  @StackTrace(false)
+  static final class Section extends Event {
+    @Label("Section")
+    String section;
+
+    @Label("Id")
+    int id;
+
+    @Label("Bytes")
+    int bytes;
+
+    @Label("Relocations")
+    int relocations;
+
+    void record(SectionInfo info) {
+      if (!shouldCommit()) return;
+      section = info.getName();
+      id = info.getId();
+      bytes = info.getSize();
+      relocations = info.getRelocationTable().size();
+      commit();
+    }
+  }
+
+  @Name("com.endava.mmarko.SlowLine")
+  @Label("Slow Line")
+  @Category("Assembler")
+  @Description("A line that took longer than the threshold to parse or encode")
+  @Threshold("10 ms")
+  @StackTrace(false)
+  static final class SlowLine extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Line")
+    String line;
+
+    @Label("Section")
+    String section;
+
+    @Label("Offset")
+    int offset;
+
+    void record(String phase, CharSequence line, String section, int offset) {
+      if (!shouldCommit()) return;
+      this.phase = phase;
+      this.line = line.toString();
+      this.section = section;
+      this.offset = offset;
+      commit();
+    }
+  }
+}
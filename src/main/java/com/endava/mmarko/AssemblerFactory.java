@@ -0,0 +1,18 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+
+interface AssemblerFactory {
+  Assembler create(String input, String output) throws IOException;
+
+  static AssemblerFactory of(OutputFormat format, boolean onePass) {
+    if (onePass) return (input, output) -> new OnePassAssembler(input, output, format);
+    return (input, output) -> new AssemblerImpl(input, output, format);
+  }
+
+  // two pass assemblers sharing the cache
+  static AssemblerFactory incremental(OutputFormat format, SectionCache cache) {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    return (input, output) -> new AssemblerImpl(input, output, format, parallelism, cache);
+  }
+}
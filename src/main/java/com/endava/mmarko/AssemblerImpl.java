@@ -1,201 +1,338 @@
 package com.endava.mmarko;
 
-import static com.endava.mmarko.NumberParser.*;
 import java.io.*;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-class AssemblerImpl implements Assembler {
-  private BufferedReader input;
-  private BufferedWriter output;
-
-  private SymbolTable symbolTable;
-  private SectionTable sectionTable;
-  private List<EquSymbol> equTable;
+class AssemblerImpl extends BaseAssembler implements TwoPassAssembler {
+  private final OperandResolver resolver;
+  private final int parallelism;
+  private final SectionCache cache;
 
   AssemblerImpl(String input, String output) throws IOException {
-    this.input = new BufferedReader(new FileReader(new File(input)));
-    this.output = new BufferedWriter(new FileWriter(new File(output)));
-    symbolTable = new SymbolTable();
-    sectionTable = new SectionTable();
-    equTable = new LinkedList<>();
+    this(input, output, OutputFormat.LISTING);
+  }
+
+  AssemblerImpl(String input, String output, OutputFormat format) throws IOException {
+    this(input, output, format, Runtime.getRuntime().availableProcessors());
+  }
+
+  // sections are encoded on the common fork/join pool unless parallelism is 1
+  AssemblerImpl(String input, String output, OutputFormat format, int parallelism) throws IOException {
+    this(input, output, format, parallelism, null);
+  }
+
+  // sections found in the cache aren't encoded again, without one every section is
+  AssemblerImpl(String input, String output, OutputFormat format, int parallelism, SectionCache cache)
+      throws IOException {
+    this(SourceReader.open(input), OutputWriter.create(output, format), parallelism, cache);
+  }
+
+  AssemblerImpl(SourceReader input, OutputWriter output, int parallelism, SectionCache cache) {
+    super(input, output);
+    resolver = new SymbolResolver(symbolTable, equTable);
+    this.parallelism = parallelism;
+    this.cache = cache;
+  }
+
+  @Override
+  public void assemble() throws IOException, SyntaxError {
+    AssemblerEvents.Assembly event = new AssemblerEvents.Assembly();
+    event.begin();
+    boolean successful = false;
+    try {
+      secondPass(firstPass());
+      successful = true;
+    } finally {
+      event.record(getSourceName(), successful);
+    }
   }
 
   @Override
-  public List<String> firstPass() throws IOException {
-    List<String> output =  new LinkedList<>();
-    SectionLocation location = new SectionLocation();
+  public List<ParsedLine> firstPass() throws IOException, SyntaxError {
+    AssemblerEvents.Pass event = new AssemblerEvents.Pass();
+    event.begin();
+    readSource();
+    long wall = System.nanoTime(), cpu = stats == null ? 0 : AssemblyStats.cpuTime();
 
-    String line = input.readLine();
+    FirstPass pass = new FirstPass();
+    LineParser lineParser = new LineParser();
 
-    while (line != null && !line.contains(".end")) {
-      if (line.isBlank()) {
-        line = input.readLine();
-        continue;
+    CharSequence line;
+    while ((line = nextLine()) != null) {
+      AssemblerEvents.SlowLine lineEvent = new AssemblerEvents.SlowLine();
+      lineEvent.begin();
+      try {
+        lineParser.parse(line);
+        int offset = pass.location.getOffset();
+        pass.handle(lineParser);
+        // a section line starts its section
+        lineEvent.record("parse", line, pass.sectionName,
+            lineParser.getType() == LineParser.LineType.SECTION ? 0 : offset);
+      } catch (SyntaxError e) {
+        throw e.atLine(line);
       }
+    }
 
-      line = removeCarriageReturn(line);
+    // after this the symbol table is final
+    applyGlobals(pass.globals);
+    // and so are the constants and every operand value
+    equTable.resolveAll(symbolTable);
+    fold(pass.output);
 
+    if (stats != null) {
+      stats.countTables(symbolTable, equTable, sectionTable);
+      stats.add(AssemblyStats.Phase.FIRST_PASS, wall, cpu);
+    }
+    event.record(getSourceName(), "first");
+    return pass.output;
+  }
+
+  // where the first pass is, statements of included files are handled the same way as the source's own
+  private class FirstPass implements StatementHandler {
+    final List<ParsedLine> output = new ArrayList<>();
+    final List<ParsedLine> globals = new ArrayList<>();
+    final SectionLocation location = new SectionLocation();
+    String sectionName;
+
+    @Override
+    public void handle(Statement statement) throws SyntaxError {
+      addLabel(statement.getLabel(), location);
+
+      int offset = location.getOffset();
+      InstructionParser instrParser = null;
+      switch (statement.getType()) {
+        case SECTION: {
+          location.incrementSection();
+          offset = location.getOffset();
+          sectionName = statement.getSectionName();
+          sectionTable.add(sectionName, location.getId(), statement.getSectionFlags());
+          break;
+        }
+        case DIRECTIVE: firstPassDirective(statement, location); break;
+        case INSTRUCTION: instrParser = firstPassInstruction(statement, location); break;
+      }
+
+      if (statement.getDirective() == LineParser.DirectiveType.INCLUDE) {
+        include(statement.getSymbol(), this);
+      } else if (statement.getDirective() == LineParser.DirectiveType.GLOBAL) {
+        globals.add(new ParsedLine(statement, null, offset, 0));
+      } else if (isNeededInSecondPass(statement)) {
+        output.add(new ParsedLine(statement, instrParser, offset, location.getOffset() - offset));
+      }
+    }
+  }
+
+  // expressions and data operands get their final values, so encoding only copies them
+  private void fold(List<ParsedLine> lines) throws SyntaxError {
+    for (int i = 0; i < lines.size(); i++) {
+      ParsedLine line = lines.get(i);
       try {
-        LineParser lineParser = new LineParser(line, equTable);
-
-        addLabel(lineParser.getLabel(), location);
-
-        switch (lineParser.getType()) {
-          case SECTION: {
-            location.incrementSection();
-            sectionTable.add(lineParser.getSectionName(), location.getId(), lineParser.getSectionFlags());
-            break;
-          }
-          case DIRECTIVE: firstPassDirective(lineParser, location); break;
-          case INSTRUCTION: firstPassInstruction(lineParser, location); break;
+        InstructionParser instruction = line.getInstruction();
+        if (instruction != null && instruction.hasExpressions()) {
+          int[] values = instruction.evaluateExpressions(symbolTable, equTable);
+          lines.set(i, new ParsedLine(line, instruction.fold(values), values));
+        } else if (line.getDirective() == LineParser.DirectiveType.BYTE
+            || line.getDirective() == LineParser.DirectiveType.WORD) {
+          List<String> operands = line.getOperands();
+          int[] values = new int[operands.size()];
+          for (int j = 0; j < values.length; j++) values[j] = equTable.resolve(operands.get(j), symbolTable);
+          lines.set(i, new ParsedLine(line, null, values));
         }
       } catch (SyntaxError e) {
-        System.out.println( "SYNTAX ERROR in line: " + line + "\n");
-        System.out.println(e.getMessage() + "\n");
-        System.exit(-2);
+        throw e.atLine(line.getSource());
       }
+    }
+  }
 
-      output.add(line);
-      line = input.readLine();
+  // the tables are final after the first pass, so every section can be encoded on its own,
+  // at most 2 * parallelism sections are encoded ahead of the one being written
+  @Override
+  public void secondPass(List<ParsedLine> input) throws IOException, SyntaxError {
+    AssemblerEvents.Pass event = new AssemblerEvents.Pass();
+    event.begin();
+    long wall = System.nanoTime();
+    long writing = stats == null ? 0 : stats.getWallNanos(AssemblyStats.Phase.WRITE);
+    output.start(symbolTable, sectionTable);
+
+    Deque<Future<SectionInfo>> inFlight = new ArrayDeque<>();
+    try {
+      int id = 0;
+      for (List<ParsedLine> section : splitSections(input)) {
+        if (inFlight.size() == 2 * parallelism) output.writeSection(join(inFlight.removeFirst()));
+        inFlight.addLast(encodeSection(section, id++));
+      }
+      while (!inFlight.isEmpty()) output.writeSection(join(inFlight.removeFirst()));
+    } finally {
+      for (Future<SectionInfo> section : inFlight) section.cancel(false);
     }
 
-    return output;
+    output.finish();
+
+    // the encoding cpu time is added by the sections
+    if (stats != null) {
+      writing = stats.getWallNanos(AssemblyStats.Phase.WRITE) - writing;
+      stats.addWall(AssemblyStats.Phase.SECOND_PASS, System.nanoTime() - wall - writing);
+    }
+    event.record(getSourceName(), "second");
   }
 
-  @Override
-  public void secondPass(List<String> input) throws IOException {
-    SectionInfo sectionInfo = new SectionInfo();
-    StringBuilder tempOutput = new StringBuilder();
+  // the first pass output starts a new list at every section line
+  private List<List<ParsedLine>> splitSections(List<ParsedLine> input) {
+    List<List<ParsedLine>> sections = new ArrayList<>();
+    int start = 0;
+    for (int i = 1; i <= input.size(); i++) {
+      if (i == input.size() || input.get(i).getType() == LineParser.LineType.SECTION) {
+        sections.add(input.subList(start, i));
+        start = i;
+      }
+    }
+    return sections;
+  }
 
-    for(String line: input) {
+  private Future<SectionInfo> encodeSection(List<ParsedLine> lines, int id) {
+    FutureTask<SectionInfo> task = new FutureTask<>(() -> {
+      AssemblerEvents.Section event = new AssemblerEvents.Section();
+      event.begin();
+      long cpu = stats == null ? 0 : AssemblyStats.cpuTime();
+      SectionInfo info = cache == null ? encode(lines, id, resolver) : encodeCached(lines, id);
+      if (stats != null) stats.addCpu(AssemblyStats.Phase.SECOND_PASS, AssemblyStats.cpuTime() - cpu);
+      event.record(info);
+      return info;
+    });
+
+    if (parallelism > 1) ForkJoinPool.commonPool().execute(task);
+    else task.run();
+    return task;
+  }
+
+  private SectionInfo encode(List<ParsedLine> lines, int id, OperandResolver resolver) throws SyntaxError {
+    SectionInfo info = new SectionInfo(id, lines.get(0).getName());
+    for (ParsedLine line : lines.subList(1, lines.size())) {
+      AssemblerEvents.SlowLine event = new AssemblerEvents.SlowLine();
+      event.begin();
       try {
-        LineParser lineParser = new LineParser(line, equTable);
-
-        switch(lineParser.getType()) {
-          case SECTION: {
-            printSection(sectionInfo, tempOutput);
-            sectionInfo.startNewSection(lineParser.getSectionName());
-            String outputFormatting = "======"
-                + sectionInfo.getName()
-                + "===================================================================================================";
-            tempOutput.append("\n").append(outputFormatting, 0, 105).append("\n");
-            break;
-          }
-          case DIRECTIVE: secondPassDirective(lineParser, sectionInfo); break;
-          case INSTRUCTION: secondPassInstruction(lineParser, sectionInfo); break;
+        switch (line.getType()) {
+          case DIRECTIVE: secondPassDirective(line, info); break;
+          case INSTRUCTION: secondPassInstruction(line, info, resolver); break;
         }
+        event.record("encode", line.getSource(), info.getName(), line.getOffset());
       } catch (SyntaxError e) {
-        System.out.println( "SYNTAX ERROR in line: " + line + "\n");
-        System.out.println(e.getMessage() + "\n");
-        System.exit(-2);
+        throw e.atLine(line.getSource());
       }
     }
+    return info;
+  }
 
-    printSection(sectionInfo, tempOutput);
-    tempOutput.append("\n\n\n");
+  // the symbols the section refers to are collected while it's encoded, the cache checks them next time
+  private SectionInfo encodeCached(List<ParsedLine> lines, int id) throws SyntaxError {
+    ByteBuffer key = SectionCache.hash(lines);
+    SectionInfo info = cache.find(key, id, lines.get(0).getName(), symbolTable, equTable);
+    if (info != null) return info;
 
-    output.write(symbolTable.toString());
-    output.write(sectionTable.toString());
-    output.write(tempOutput.toString());
-  }
+    // folded values are part of the key, so only symbolic operands are left to check
+    Set<String> symbols = new HashSet<>();
+    info = encode(lines, id, new OperandResolver() {
+      @Override
+      public int resolve(String symbol, RelocationType relocationType, boolean constantAllowed,
+                         int offset, SectionInfo section) throws SyntaxError {
+        symbols.add(symbol);
+        return resolver.resolve(symbol, relocationType, constantAllowed, offset, section);
+      }
 
-  @Override
-  public void close() throws IOException {
-    input.close();
-    output.close();
-  }
+      @Override
+      public int resolve(Expression expression, int index, int size, SectionInfo section) throws SyntaxError {
+        return resolver.resolve(expression, index, size, section);
+      }
+    });
 
-  private String removeCarriageReturn(String line) {
-    if (line.charAt(line.length() - 1) == 13) { // 13 - carriage return ascii code
-      line = line.substring(0, line.length() -1);
-    }
-    return line;
+    cache.put(key, info, symbols, symbolTable, equTable);
+    return info;
   }
 
-  private void addLabel(String label, SectionLocation location) throws SyntaxError {
-    if (!label.isEmpty()) {
-      if (location.isInvalid()) throw new SyntaxError("Not in a Section");
-      if (label.length() > 23) throw new SyntaxError("Label too long, max characters: 23");
-      symbolTable.add(label, location);
+  private SectionInfo join(Future<SectionInfo> section) throws IOException, SyntaxError {
+    try {
+      return section.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while encoding sections");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SyntaxError) throw (SyntaxError) e.getCause();
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new IllegalStateException(e.getCause());
     }
   }
 
-  private void firstPassInstruction(LineParser lineParser, SectionLocation location) throws SyntaxError {
+  private InstructionParser firstPassInstruction(Statement statement, SectionLocation location) throws SyntaxError {
     if (location.isInvalid()) throw new SyntaxError("Not in a Section");
-    String instruction = lineParser.getInstruction();
-    InstructionParser instrParser = new InstructionParser(instruction, location.getOffset());
+    InstructionParser instrParser = statement.getInstructionParser();
+    if (stats != null) stats.countInstruction(instrParser);
     location.incrementOffset(instrParser.getInstrSize());
+    return instrParser;
   }
 
-  private void firstPassDirective(LineParser lineParser, SectionLocation location) {
-    switch(lineParser.getDirectiveName()) {
-      case "byte":
-        location.incrementOffset(lineParser.getValues().size()); break;
-      case "word": location.incrementOffset(2 * lineParser.getValues().size()); break;
-      case "skip": location.incrementOffset(lineParser.getValue()); break;
-      case "align": while (location.getOffset() % lineParser.getValue() != 0) location.incrementOffset(); break;
-      case "equ":
-        symbolTable.add(lineParser.getSymbol(), location);
-        equTable.add(new EquSymbol(lineParser.getSymbol(), lineParser.getValue()));
-        break;
-      case "extern": symbolTable.add(lineParser.getSymbol(), new SectionLocation(), true);
-    }
-  }
+  private void firstPassDirective(Statement statement, SectionLocation location) throws SyntaxError {
+    if (statement.getDirective().needsSection() && location.isInvalid())
+      throw new SyntaxError("Not in a Section");
 
-  private void secondPassDirective(LineParser lineParser, SectionInfo info) throws SyntaxError {
-    List<Integer> values = lineParser.getValues();
-    switch(lineParser.getDirectiveName()){
-      case "byte":
-        info.incrementOffset(values.size());
-        for(int value: values) info.append(toHex(value, 1));
+    switch(statement.getDirective()) {
+      case BYTE: location.incrementOffset(statement.getParams().size()); break;
+      case WORD: location.incrementOffset(2 * statement.getParams().size()); break;
+      case SKIP: location.incrementOffset(statement.getValue()); break;
+      case ALIGN:
+        if (statement.getValue() <= 0) throw new SyntaxError("Bad Alignment");
+        while (location.getOffset() % statement.getValue() != 0) location.incrementOffset();
         break;
-      case "word":
-        info.incrementOffset(2 * values.size());
-        for (int value : values) info.append(swapBytes(toHex(value, 2)));
+      case EQU:
+        symbolTable.add(statement.getSymbol(), location);
+        if (statement.getExpression() == null) equTable.add(statement.getSymbol(), statement.getValue());
+        else equTable.add(statement.getSymbol(), statement.getExpression(), statement.getSource());
         break;
-      case "skip":
-        info.append("00".repeat(Math.max(0, lineParser.getValue())));
-        info.incrementOffset(lineParser.getValue());
-        break;
-      case "align":
-        while (info.getOffset() % lineParser.getValue() != 0) {
-          info.incrementOffset();
-          info.append("00");
-        }
-        break;
-      case "global": symbolTable.setGlobal(lineParser.getSymbol()); break;
+      case EXTERN: symbolTable.add(statement.getSymbol(), new SectionLocation(), true);
     }
   }
 
-  private void secondPassInstruction(LineParser lineParser, SectionInfo info) throws SyntaxError {
-    if(info == null) return;
-
-    String instruction = lineParser.getInstruction();
-    InstructionParser instrParser = new InstructionParser(instruction, info.getOffset());
-    info.incrementOffset(instrParser.getInstrSize());
-
-    long instrCode = instrParser.createInstrCode(symbolTable, equTable, info.getRelocationTable());
-    String instrCodeHex = toHex(instrCode, instrParser.getInstrSize());
-    info.append(instrCodeHex);
+  // labels, constants, externs and includes are fully handled by the first pass
+  private boolean isNeededInSecondPass(Statement statement) {
+    switch (statement.getType()) {
+      case EMPTY: return false;
+      case DIRECTIVE:
+        return statement.getDirective() != LineParser.DirectiveType.EQU
+            && statement.getDirective() != LineParser.DirectiveType.EXTERN
+            && statement.getDirective() != LineParser.DirectiveType.INCLUDE;
+      default: return true;
+    }
   }
 
-  private void printSection(SectionInfo info, StringBuilder tempOutput) {
-    if (info.isValid()) {
-      String formattedBytes = format(info.getBytes());
-      tempOutput.append(formattedBytes);
-      printRelocationTable(info, tempOutput);
+  private void secondPassDirective(ParsedLine line, SectionInfo info) throws SyntaxError {
+    switch(line.getDirective()){
+      case BYTE:
+        for (int value : line.getValues()) info.appendByte(value);
+        break;
+      case WORD:
+        for (int value : line.getValues()) info.appendWord(value);
+        break;
+      case SKIP:
+      case ALIGN:
+        info.appendZeros(Math.max(0, line.getSize()));
+        break;
     }
+    info.incrementOffset(line.getSize());
   }
 
-  private void printRelocationTable(SectionInfo info, StringBuilder output) {
-    if(info.getRelocationTable() == null) return;
-    String outputFormatting = "======.rel " + info.getName() + "===================================================================================================";
-    output.append("\n").append(outputFormatting, 0, 105).append("\n");
-    output.append("      Offset            Type          Section         Symbol\n");
-    output.append("---------------------------------------------------------------------------------------------------------\n");
-    for (RelocationSymbol rs : info.getRelocationTable()) output.append(rs.toString()).append("\n");
-    output.append("=========================================================================================================");
+  private void secondPassInstruction(ParsedLine line, SectionInfo info, OperandResolver resolver)
+      throws SyntaxError {
+    line.getInstruction().encode(line.getOffset(), info, resolver);
+    info.incrementOffset(line.getSize());
   }
 
 }
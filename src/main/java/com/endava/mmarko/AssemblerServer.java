@@ -0,0 +1,204 @@
+package com.endava.mmarko;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// keeps a warmed up JVM running for build scripts. Clients connect over a loopback socket and send
+// batches of files, every connection gets its own thread and the files of all connections are
+// assembled on one shared pool. Encoded sections are cached, so reassembling an edited file only
+// encodes what changed. Input and output paths are resolved by the server, so the client
+// sends absolute ones.
+//
+// The server reads and writes whatever files it's sent with the rights of the user who started it,
+// and anyone on the machine can reach a loopback port. So it trusts only clients that know a random
+// token, which it writes to a file only that user can read (0600, in a 0700 directory, by default
+// ~/.ss-assembler/server-<port>.token) and deletes again once it's closed. A connection that doesn't
+// start with the token is dropped before anything is read or written.
+//
+// Protocol, one tab separated request per line, after a first line with the token:
+//   assemble <format> <one-pass|two-pass> <count>, followed by count lines of <input> <output>,
+//     answered by count lines of <status> <millis> <message>, in the same order
+//   shutdown, stops the server
+// Messages have their backslashes and new lines escaped.
+class AssemblerServer implements Closeable {
+  static final int DEFAULT_PORT = 7543;
+
+  static final String ASSEMBLE = "assemble";
+  static final String SHUTDOWN = "shutdown";
+  static final String ONE_PASS = "one-pass";
+  static final String TWO_PASS = "two-pass";
+
+  private final ServerSocket socket;
+  private final ExecutorService connections;
+  private final ExecutorService workers;
+  private final SectionCache cache;
+  private final Path tokenFile;
+  private final byte[] token;
+
+  AssemblerServer(int port, int threads) throws IOException {
+    this(port, threads, defaultTokenDirectory());
+  }
+
+  AssemblerServer(int port, int threads, Path tokenDirectory) throws IOException {
+    socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    try {
+      tokenFile = tokenFile(tokenDirectory, socket.getLocalPort());
+      token = writeToken(tokenFile).getBytes(StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    connections = Executors.newCachedThreadPool();
+    workers = Executors.newFixedThreadPool(threads);
+    cache = new SectionCache();
+  }
+
+  static Path defaultTokenDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".ss-assembler");
+  }
+
+  static Path tokenFile(Path directory, int port) {
+    return directory.resolve("server-" + port + ".token");
+  }
+
+  // a fresh token, replacing the one of a server that wasn't closed. Temporary files are created
+  // readable by their owner only, and moved into place once the token is written.
+  private static String writeToken(Path file) throws IOException {
+    byte[] random = new byte[32];
+    new SecureRandom().nextBytes(random);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+    Path directory = Files.createDirectories(file.getParent());
+    if (directory.getFileSystem().supportedFileAttributeViews().contains("posix"))
+      Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+    Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, token.getBytes(StandardCharsets.UTF_8));
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return token;
+  }
+
+  int getPort() {
+    return socket.getLocalPort();
+  }
+
+  // returns once the server is closed
+  void serve() throws IOException {
+    try {
+      while (true) {
+        Socket client = socket.accept();
+        connections.execute(() -> handle(client));
+      }
+    } catch (IOException e) {
+      if (!socket.isClosed()) throw e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+    connections.shutdownNow();
+    workers.shutdownNow();
+    Files.deleteIfExists(tokenFile);
+  }
+
+  private void handle(Socket client) {
+    try (Socket connection = client;
+         BufferedReader in = new BufferedReader(
+             new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+         Writer out = new BufferedWriter(
+             new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line = in.readLine();
+      // compared in constant time, so the answer doesn't tell how much of a guess was right
+      if (line == null || !MessageDigest.isEqual(token, line.getBytes(StandardCharsets.UTF_8))) return;
+      while ((line = in.readLine()) != null) {
+        String[] request = line.split("\t");
+        if (SHUTDOWN.equals(request[0])) {
+          close();
+          return;
+        }
+        if (!ASSEMBLE.equals(request[0]) || request.length != 4) return;
+
+        List<BatchAssembler.Result> results = assemble(request, in);
+        if (results == null) return;
+        for (BatchAssembler.Result result : results) {
+          out.write(result.status + "\t" + result.millis + "\t"
+              + escape(result.message == null ? "" : result.message) + "\n");
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      // the client went away, nothing to answer
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // null if the request is malformed, the connection is dropped then
+  private List<BatchAssembler.Result> assemble(String[] request, BufferedReader in)
+      throws IOException, InterruptedException {
+    OutputFormat format = null;
+    for (OutputFormat f : OutputFormat.values())
+      if (f.toString().equals(request[1])) format = f;
+    int count;
+    try {
+      count = Integer.parseInt(request[3]);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (format == null || count < 0 || !(ONE_PASS.equals(request[2]) || TWO_PASS.equals(request[2]))) return null;
+
+    List<BatchAssembler.Job> jobs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String line = in.readLine();
+      if (line == null) return null;
+      String[] files = line.split("\t");
+      if (files.length != 2) return null;
+      jobs.add(new BatchAssembler.Job(files[0], files[1]));
+    }
+
+    // sections don't depend on the output format, so every two pass job shares the cache
+    AssemblerFactory factory = ONE_PASS.equals(request[2])
+        ? AssemblerFactory.of(format, true) : AssemblerFactory.incremental(format, cache);
+    return new BatchAssembler(factory, 1).run(jobs, workers);
+  }
+
+  static String escape(String message) {
+    return message.replace("\\", "\\\\").replace("\n", "\\n");
+  }
+
+  static String unescape(String message) {
+    StringBuilder result = new StringBuilder(message.length());
+    for (int i = 0; i < message.length(); i++) {
+      char c = message.charAt(i);
+      if (c == '\\' && i + 1 < message.length()) {
+        c = message.charAt(++i) == 'n' ? '\n' : message.charAt(i);
+      }
+      result.append(c);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,227 @@
+package com.endava.mmarko;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// finished outputs on disk, keyed by a hash of the source bytes, the directory includes are resolved in,
+// the encoding version and the output format, so unchanged sources aren't assembled again. An entry
+// starts with the hashes of the files the source included, and is only used while all of them still
+// match. Damaged entries are deleted and the source is assembled again. Entries are written to a temporary file and
+// moved into place, and eviction tolerates entries vanishing, so any number of processes can share
+// a directory. The least recently used entries are evicted once the directory grows over its limit.
+class AssemblyCache {
+  // bump whenever the encoding or one of the output formats changes, so old entries stop matching
+  static final int ENCODING_VERSION = 3;
+  static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final Path directory;
+  private final long maxBytes;
+
+  AssemblyCache(String directory) throws IOException {
+    this(directory, DEFAULT_MAX_BYTES);
+  }
+
+  AssemblyCache(String directory, long maxBytes) throws IOException {
+    this.directory = Files.createDirectories(Paths.get(directory));
+    this.maxBytes = maxBytes;
+  }
+
+  // assemblers that look for the output in the cache first, and store it once they've made it
+  AssemblerFactory wrap(AssemblerFactory factory, OutputFormat format) {
+    return (input, output) -> new CachedAssembler(factory, input, output, format);
+  }
+
+  private class CachedAssembler implements Assembler {
+    private final AssemblerFactory factory;
+    private final String input;
+    private final String output;
+    private final OutputFormat format;
+    // empty when the output came from the cache
+    private Collection<Path> includedFiles = Collections.emptyList();
+
+    CachedAssembler(AssemblerFactory factory, String input, String output, OutputFormat format) {
+      this.factory = factory;
+      this.input = input;
+      this.output = output;
+      this.format = format;
+    }
+
+    @Override
+    public void assemble() throws IOException, SyntaxError {
+      Path entry = directory.resolve(key(Paths.get(input), format) + format.getExtension());
+      if (fetch(entry, Paths.get(output))) return;
+
+      try (Assembler as = factory.create(input, output)) {
+        as.assemble();
+        includedFiles = as.getIncludedFiles();
+      }
+      store(entry, Paths.get(output), includedFiles);
+    }
+
+    @Override
+    public Collection<Path> getIncludedFiles() {
+      return includedFiles;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  // the same source in another directory may include other files, so the directory is part of the key.
+  // It's the one BaseAssembler resolves includes in, the absolute and normalized parent of input.
+  static String key(Path input, OutputFormat format) throws IOException {
+    Path directory = input.toAbsolutePath().normalize().getParent();
+    return hash(ENCODING_VERSION + " " + format + " " + directory + "\n", input);
+  }
+
+  // SHA-256 of prefix followed by the bytes of file, in hex
+  private static String hash(String prefix, Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    byte[] hash = digest.digest();
+    char[] key = new char[2 * hash.length];
+    for (int i = 0; i < hash.length; i++) {
+      key[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+      key[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+    }
+    return new String(key);
+  }
+
+  // false if there's no such entry, also when another process evicted it just now, when one of the
+  // included files changed or is gone, or when the entry is damaged, which deletes it
+  private boolean fetch(Path entry, Path output) throws IOException {
+    try (InputStream in = Files.newInputStream(entry)) {
+      Map<Path, String> includes = readHeader(in);
+      if (includes != null) {
+        for (Map.Entry<Path, String> include : includes.entrySet())
+          if (!include.getValue().equals(hash("", include.getKey()))) return false;
+        Files.copy(in, output, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    Files.deleteIfExists(entry);
+    return false;
+  }
+
+  // the included files with their hashes, null if the header is damaged
+  private static Map<Path, String> readHeader(InputStream in) throws IOException {
+    try {
+      String count = readLine(in);
+      if (count == null || Integer.parseInt(count) < 0) return null;
+      Map<Path, String> includes = new LinkedHashMap<>();
+      for (int i = Integer.parseInt(count); i > 0; i--) {
+        String line = readLine(in);
+        int space = line == null ? -1 : line.indexOf(' ');
+        if (space <= 0) return null;
+        includes.put(Paths.get(line.substring(space + 1)), line.substring(0, space));
+      }
+      return includes;
+    } catch (NumberFormatException | InvalidPathException e) {
+      return null;
+    }
+  }
+
+  // null at the end of the stream
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    for (int b = in.read(); b != '\n'; b = in.read()) {
+      if (b < 0) return null;
+      line.write(b);
+    }
+    return new String(line.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  // the number of included files, a "hash path" line for each of them, then the output
+  private void store(Path entry, Path output, Collection<Path> includedFiles) throws IOException {
+    Path temp = Files.createTempFile(directory, entry.getFileName().toString(), TEMP_SUFFIX);
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        StringBuilder header = new StringBuilder().append(includedFiles.size()).append('\n');
+        for (Path file : includedFiles) header.append(hash("", file)).append(' ').append(file).append('\n');
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        Files.copy(output, out);
+      }
+      try {
+        Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    evict();
+  }
+
+  // oldest entries first, until the rest fit into maxBytes
+  private void evict() throws IOException {
+    List<Path> entries = new ArrayList<>();
+    long total = 0;
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) continue;
+        try {
+          total += Files.size(file);
+          entries.add(file);
+        } catch (NoSuchFileException e) {
+          // evicted by someone else
+        }
+      }
+    }
+    if (total <= maxBytes) return;
+
+    entries.sort(Comparator.comparing(AssemblyCache::lastModified));
+    for (Path file : entries) {
+      if (total <= maxBytes) break;
+      try {
+        long size = Files.size(file);
+        Files.delete(file);
+        total -= size;
+      } catch (NoSuchFileException e) {
+        // evicted by someone else
+      }
+    }
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (NoSuchFileException e) {
+      return FileTime.fromMillis(0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.endava.mmarko;
+
+import java.util.Collections;
+import java.util.List;
+
+// the output of an assembly, or why there is none
+public class AssemblyResult {
+  private final byte[] output;
+  private final List<Diagnostic> diagnostics;
+
+  public static class Diagnostic {
+    private final String message;
+    private final String line;
+
+    Diagnostic(String message, String line) {
+      this.message = message;
+      this.line = line;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    // the source line the error is in, null if it isn't tied to one
+    public String getLine() {
+      return line;
+    }
+
+    @Override
+    public String toString() {
+      return line == null ? message : message + ": " + line;
+    }
+  }
+
+  private AssemblyResult(byte[] output, List<Diagnostic> diagnostics) {
+    this.output = output;
+    this.diagnostics = diagnostics;
+  }
+
+  static AssemblyResult succeeded(byte[] output) {
+    return new AssemblyResult(output, Collections.emptyList());
+  }
+
+  // the assemblers stop at the first error, so there is a single diagnostic
+  static AssemblyResult failed(SyntaxError error) {
+    return new AssemblyResult(null, Collections.singletonList(new Diagnostic(error.getMessage(), error.getLine())));
+  }
+
+  public boolean isSuccessful() {
+    return output != null;
+  }
+
+  // the listing or object file, in the format the assembler was created with, null if it failed
+  public byte[] getOutput() {
+    return output;
+  }
+
+  public List<Diagnostic> getDiagnostics() {
+    return diagnostics;
+  }
+}
@@ -0,0 +1,227 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// where the time of one assembly went and what it produced. Wall and cpu time are kept per phase,
+// the cpu time of the second pass adds up every thread that encoded a section, so with parallel
+// encoding it can be larger than its wall time. The one pass assembler encodes while parsing,
+// its second pass stays 0.
+public class AssemblyStats {
+  public enum Phase {
+    READ("read"), FIRST_PASS("first pass"), SECOND_PASS("second pass"), WRITE("write");
+
+    private final String name;
+
+    Phase(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static final String[] MODE_NAMES = {"imm", "reg", "regind", "regind8", "regind16", "mem"};
+  private static final Mnemonic[] MNEMONICS = Mnemonic.values();
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final long[] wallNanos = new long[Phase.values().length];
+  private final long[] cpuNanos = new long[Phase.values().length];
+  private final long[] mnemonics = new long[MNEMONICS.length];
+  private final long[] modes = new long[MODE_NAMES.length];
+  private long lines;
+  private int symbols;
+  private int equConstants;
+  private int sections;
+  private long relocations;
+  private long bytes;
+
+  // cpu time of the current thread, 0 if the jvm can't measure it
+  static long cpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  // adds the time since the given System.nanoTime() and cpuTime() to the phase
+  synchronized void add(Phase phase, long wallStart, long cpuStart) {
+    wallNanos[phase.ordinal()] += System.nanoTime() - wallStart;
+    cpuNanos[phase.ordinal()] += cpuTime() - cpuStart;
+  }
+
+  synchronized void addWall(Phase phase, long nanos) {
+    wallNanos[phase.ordinal()] += nanos;
+  }
+
+  synchronized void addCpu(Phase phase, long nanos) {
+    cpuNanos[phase.ordinal()] += nanos;
+  }
+
+  void countLine() {
+    lines++;
+  }
+
+  void countInstruction(InstructionParser instruction) {
+    mnemonics[instruction.getMnemonic().ordinal()]++;
+    for (int mode : instruction.getAddressingModes()) modes[mode]++;
+  }
+
+  void countTables(SymbolTable symbolTable, EquTable equTable, SectionTable sectionTable) {
+    symbols += symbolTable.getSymbols().size();
+    equConstants += equTable.size();
+    sections += sectionTable.getSections().size();
+  }
+
+  // times the writer and counts what goes through it
+  OutputWriter time(OutputWriter writer) {
+    return new OutputWriter() {
+      @Override
+      public void start(SymbolTable symbolTable, SectionTable sectionTable) throws IOException {
+        long wall = System.nanoTime(), cpu = cpuTime();
+        writer.start(symbolTable, sectionTable);
+        add(Phase.WRITE, wall, cpu);
+      }
+
+      @Override
+      public void writeSection(SectionInfo section) throws IOException {
+        long wall = System.nanoTime(), cpu = cpuTime();
+        writer.writeSection(section);
+        add(Phase.WRITE, wall, cpu);
+        relocations += section.getRelocationTable().size();
+        bytes += section.getSize();
+      }
+
+      @Override
+      public void finish() throws IOException {
+        long wall = System.nanoTime(), cpu = cpuTime();
+        writer.finish();
+        add(Phase.WRITE, wall, cpu);
+      }
+
+      @Override
+      public void close() throws IOException {
+        writer.close();
+      }
+    };
+  }
+
+  public synchronized long getWallNanos(Phase phase) {
+    return wallNanos[phase.ordinal()];
+  }
+
+  public synchronized long getCpuNanos(Phase phase) {
+    return cpuNanos[phase.ordinal()];
+  }
+
+  public synchronized long getTotalWallNanos() {
+    long total = 0;
+    for (long nanos : wallNanos) total += nanos;
+    return total;
+  }
+
+  public long getLines() {
+    return lines;
+  }
+
+  // source lines over the wall time of all phases
+  public double getLinesPerSecond() {
+    long nanos = getTotalWallNanos();
+    return nanos == 0 ? 0 : lines * 1e9 / nanos;
+  }
+
+  public int getSymbols() {
+    return symbols;
+  }
+
+  public int getEquConstants() {
+    return equConstants;
+  }
+
+  public int getSections() {
+    return sections;
+  }
+
+  public long getRelocations() {
+    return relocations;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  // instructions per mnemonic, only the ones that were used, in opcode order
+  public Map<String, Long> getMnemonics() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (Mnemonic mnemonic : MNEMONICS)
+      if (mnemonics[mnemonic.ordinal()] > 0) result.put(mnemonic.getName(), mnemonics[mnemonic.ordinal()]);
+    return Collections.unmodifiableMap(result);
+  }
+
+  // operands per addressing mode, only the ones that were used
+  public Map<String, Long> getAddressingModes() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (int mode = 0; mode < MODE_NAMES.length; mode++)
+      if (modes[mode] > 0) result.put(MODE_NAMES[mode], modes[mode]);
+    return Collections.unmodifiableMap(result);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    out.append(String.format(Locale.ROOT, "%-12s %10s %10s%n", "phase", "wall ms", "cpu ms"));
+    for (Phase phase : Phase.values()) {
+      out.append(String.format(Locale.ROOT, "%-12s %10.3f %10.3f%n", phase,
+          getWallNanos(phase) / 1e6, getCpuNanos(phase) / 1e6));
+    }
+    out.append(String.format(Locale.ROOT, "%-12s %10.3f%n", "total", getTotalWallNanos() / 1e6));
+    out.append(String.format(Locale.ROOT, "%nlines %d (%.0f lines/s)%n", lines, getLinesPerSecond()));
+    out.append(String.format(Locale.ROOT, "symbols %d, equ constants %d, sections %d, relocations %d, bytes %d%n",
+        symbols, equConstants, sections, relocations, bytes));
+    appendHistogram(out.append("\nmnemonics\n"), getMnemonics());
+    appendHistogram(out.append("\naddressing modes\n"), getAddressingModes());
+    return out.toString();
+  }
+
+  private static void appendHistogram(StringBuilder out, Map<String, Long> histogram) {
+    for (Map.Entry<String, Long> entry : histogram.entrySet())
+      out.append(String.format(Locale.ROOT, "  %-10s %10d%n", entry.getKey(), entry.getValue()));
+  }
+
+  // one object, times in nanoseconds, keys never need escaping
+  public String toJson() {
+    StringBuilder out = new StringBuilder("{\"phases\":{");
+    String separator = "";
+    for (Phase phase : Phase.values()) {
+      out.append(separator).append('"').append(phase.name().toLowerCase(Locale.ROOT))
+          .append("\":{\"wallNanos\":").append(getWallNanos(phase))
+          .append(",\"cpuNanos\":").append(getCpuNanos(phase)).append('}');
+      separator = ",";
+    }
+    out.append("},\"totalWallNanos\":").append(getTotalWallNanos())
+        .append(",\"lines\":").append(lines)
+        .append(",\"linesPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getLinesPerSecond()))
+        .append(",\"symbols\":").append(symbols)
+        .append(",\"equConstants\":").append(equConstants)
+        .append(",\"sections\":").append(sections)
+        .append(",\"relocations\":").append(relocations)
+        .append(",\"bytes\":").append(bytes);
+    appendJson(out.append(",\"mnemonics\":"), getMnemonics());
+    appendJson(out.append(",\"addressingModes\":"), getAddressingModes());
+    return out.append('}').toString();
+  }
+
+  private static void appendJson(StringBuilder out, Map<String, Long> histogram) {
+    out.append('{');
+    String separator = "";
+    for (Map.Entry<String, Long> entry : histogram.entrySet()) {
+      out.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+      separator = ",";
+    }
+    out.append('}');
+  }
+}
@@ -0,0 +1,136 @@
+package com.endava.mmarko;
+
+import java.io.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// source, output and tables shared by the assembler implementations
+abstract class BaseAssembler implements Assembler {
+  private final SourceReader input;
+  OutputWriter output;
+  AssemblyStats stats; // null unless stats are collected
+  private Deque<CharSequence> readAhead;
+  private final IncludeCache includes = IncludeCache.SHARED;
+  private final Deque<Path> including = new ArrayDeque<>();
+  private final Set<Path> included = new LinkedHashSet<>();
+
+  interface StatementHandler {
+    void handle(Statement statement) throws SyntaxError;
+  }
+
+  final SymbolTable symbolTable;
+  final SectionTable sectionTable;
+  final EquTable equTable;
+
+  BaseAssembler(SourceReader input, OutputWriter output) {
+    this.input = input;
+    this.output = output;
+    symbolTable = new SymbolTable();
+    sectionTable = new SectionTable();
+    equTable = new EquTable();
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+
+  @Override
+  public Collection<Path> getIncludedFiles() {
+    return Collections.unmodifiableSet(included);
+  }
+
+  String getSourceName() {
+    return input.getName();
+  }
+
+  // times the phases and counts what the assembler produces, the output is timed as well
+  void collectStats(AssemblyStats stats) {
+    this.stats = stats;
+    output = stats.time(output);
+  }
+
+  // with stats the source is split into lines up front, so reading is timed apart from parsing
+  void readSource() {
+    if (stats == null) return;
+    long wall = System.nanoTime(), cpu = AssemblyStats.cpuTime();
+    readAhead = new ArrayDeque<>();
+    for (CharSequence line; (line = readLine()) != null; ) readAhead.add(line);
+    stats.add(AssemblyStats.Phase.READ, wall, cpu);
+  }
+
+  // next non blank source line, null once .end or the end of the input is reached
+  CharSequence nextLine() {
+    if (readAhead != null) return readAhead.poll();
+    return readLine();
+  }
+
+  private CharSequence readLine() {
+    CharSequence line = input.readSourceLine();
+    if (line != null && stats != null) stats.countLine();
+    return line;
+  }
+
+  // hands every statement of the included file to handler, which includes nested files the same way.
+  // Paths are relative to the including file, or to the working directory for sources in memory.
+  void include(String file, StatementHandler handler) throws SyntaxError {
+    Path directory = including.isEmpty()
+        ? (getSourceName() == null ? null : Paths.get(getSourceName()).getParent())
+        : including.peek().getParent();
+    Path path;
+    try {
+      path = (directory == null ? Paths.get(file) : directory.resolve(file)).toAbsolutePath().normalize();
+    } catch (InvalidPathException e) {
+      throw new SyntaxError("Bad Include File: " + file);
+    }
+    if (including.contains(path)) throw new SyntaxError("Recursive Include: " + file);
+    included.add(path);
+
+    List<Statement> statements;
+    try {
+      statements = includes.get(path);
+    } catch (IOException e) {
+      throw new SyntaxError("Bad Include File: " + file);
+    }
+
+    including.push(path);
+    try {
+      for (Statement statement : statements) {
+        try {
+          handler.handle(statement);
+        } catch (SyntaxError e) {
+          throw e.atLine(statement.getSource());
+        }
+      }
+    } finally {
+      including.pop();
+    }
+  }
+
+  void addLabel(String label, SectionLocation location) throws SyntaxError {
+    if (!label.isEmpty()) {
+      if (location.isInvalid()) throw new SyntaxError("Not in a Section");
+      if (label.length() > 23) throw new SyntaxError("Label too long, max characters: 23");
+      symbolTable.add(label, location);
+    }
+  }
+
+  // symbols can be exported before they are defined, so globals are applied once all of them are known
+  void applyGlobals(List<ParsedLine> globals) throws SyntaxError {
+    for (ParsedLine global : globals) {
+      try {
+        symbolTable.setGlobal(global.getName());
+      } catch (SyntaxError e) {
+        throw e.atLine(global.getSource());
+      }
+    }
+  }
+}
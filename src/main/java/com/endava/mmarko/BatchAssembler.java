@@ -0,0 +1,129 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// assembles independent source files at the same time, every file gets its own assembler
+class BatchAssembler {
+  static final int OK = 0;
+  static final int BAD_FILES = -1;
+  static final int SYNTAX_ERROR = -2;
+  static final int INTERNAL_ERROR = -3;
+
+  private final AssemblerFactory factory;
+  private final int threads;
+
+  static class Job {
+    final String input;
+    final String output;
+
+    Job(String input, String output) {
+      this.input = input;
+      this.output = output;
+    }
+  }
+
+  static class Result {
+    final Job job;
+    final int status;
+    final String message;
+    final long millis;
+
+    Result(Job job, int status, String message, long millis) {
+      this.job = job;
+      this.status = status;
+      this.message = message;
+      this.millis = millis;
+    }
+
+    @Override
+    public String toString() {
+      if (status == OK) return job.input + ": ok (" + millis + " ms)";
+      return job.input + ": " + message;
+    }
+  }
+
+  BatchAssembler(AssemblerFactory factory, int threads) {
+    this.factory = factory;
+    this.threads = threads;
+  }
+
+  // results are in the same order as the jobs
+  List<Result> run(List<Job> jobs) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+    try {
+      return run(jobs, pool);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // runs the jobs on a pool that is shared with other batches and stays up afterwards
+  List<Result> run(List<Job> jobs, ExecutorService pool) throws InterruptedException {
+    List<Future<Result>> futures = new ArrayList<>();
+    for (Job job : jobs) futures.add(pool.submit(() -> assemble(job)));
+
+    List<Result> results = new ArrayList<>();
+    for (int i = 0; i < jobs.size(); i++) {
+      try {
+        results.add(futures.get(i).get());
+      } catch (ExecutionException e) {
+        results.add(new Result(jobs.get(i), INTERNAL_ERROR, "INTERNAL ERROR: " + e.getCause(), 0));
+      }
+    }
+    return results;
+  }
+
+  private Result assemble(Job job) {
+    long start = System.nanoTime();
+    int status = OK;
+    String message = null;
+
+    try (Assembler as = factory.create(job.input, job.output)) {
+      as.assemble();
+    } catch (SyntaxError e) {
+      status = SYNTAX_ERROR;
+      message = e.report();
+    } catch (IOException e) {
+      status = BAD_FILES;
+      message = "Bad Files";
+    }
+
+    return new Result(job, status, message, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  // worst status of the batch, OK if every file was assembled
+  static int exitStatus(List<Result> results) {
+    int status = OK;
+    for (Result result : results) status = Math.min(status, result.status);
+    return status;
+  }
+
+  // one source per line, optionally followed by its output, blank lines and lines starting with '#' are skipped
+  static List<Job> readManifest(String manifest, OutputFormat format) throws IOException {
+    List<Job> jobs = new ArrayList<>();
+    for (String line : Files.readAllLines(Paths.get(manifest))) {
+      line = line.trim();
+      if (line.isEmpty() || line.charAt(0) == '#') continue;
+
+      String[] files = line.split("\\s+");
+      jobs.add(new Job(files[0], files.length > 1 ? files[1] : defaultOutput(files[0], format)));
+    }
+    return jobs;
+  }
+
+  // the input with its extension replaced by the one of the output format
+  static String defaultOutput(String input, OutputFormat format) {
+    int dot = input.lastIndexOf('.');
+    int separator = Math.max(input.lastIndexOf('/'), input.lastIndexOf('\\'));
+    if (dot > separator) input = input.substring(0, dot);
+    return input + format.getExtension();
+  }
+}
@@ -0,0 +1,73 @@
+package com.endava.mmarko;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+// assembles sources held in memory without touching the file system or exiting, so a long running
+// process can assemble any number of sources in one warmed up JVM. Instances can be shared between
+// threads, only incremental ones keep state between calls.
+public class EmbeddedAssembler {
+  private final OutputFormat format;
+  private final boolean onePass;
+  private final SectionCache cache;
+
+  public EmbeddedAssembler(OutputFormat format) {
+    this(format, false);
+  }
+
+  public EmbeddedAssembler(OutputFormat format, boolean onePass) {
+    this(format, onePass, null);
+  }
+
+  private EmbeddedAssembler(OutputFormat format, boolean onePass, SectionCache cache) {
+    this.format = format;
+    this.onePass = onePass;
+    this.cache = cache;
+  }
+
+  // two pass assembler that remembers the encoded sections, so when a source is assembled again
+  // only the sections that changed, or use a symbol that changed, are encoded
+  public static EmbeddedAssembler incremental(OutputFormat format) {
+    return new EmbeddedAssembler(format, false, new SectionCache());
+  }
+
+  // utf-8 source, read from its position to its limit without moving them
+  public AssemblyResult assemble(ByteBuffer source) {
+    return assemble(new SourceReader(source.duplicate()), null);
+  }
+
+  public AssemblyResult assemble(Reader source) throws IOException {
+    return assemble(SourceReader.read(source), null);
+  }
+
+  // also adds the timings and counts of this assembly to stats
+  public AssemblyResult assemble(ByteBuffer source, AssemblyStats stats) {
+    return assemble(new SourceReader(source.duplicate()), stats);
+  }
+
+  public AssemblyResult assemble(Reader source, AssemblyStats stats) throws IOException {
+    return assemble(SourceReader.read(source), stats);
+  }
+
+  private AssemblyResult assemble(SourceReader source, AssemblyStats stats) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    OutputWriter writer = OutputWriter.create(output, format);
+    BaseAssembler assembler = onePass
+        ? new OnePassAssembler(source, writer)
+        : new AssemblerImpl(source, writer, Runtime.getRuntime().availableProcessors(), cache);
+    if (stats != null) assembler.collectStats(stats);
+
+    try (Assembler as = assembler) {
+      as.assemble();
+    } catch (SyntaxError e) {
+      return AssemblyResult.failed(e);
+    } catch (IOException e) {
+      // the output is in memory, so this can't happen
+      throw new UncheckedIOException(e);
+    }
+    return AssemblyResult.succeeded(output.toByteArray());
+  }
+}
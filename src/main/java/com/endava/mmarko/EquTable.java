@@ -0,0 +1,113 @@
+package com.endava.mmarko;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+class EquTable {
+  private final Map<String, EquSymbol> constants;
+  // constants defined by expressions, until they're evaluated, in definition order
+  private final Map<String, Pending> pending;
+
+  private static class Pending {
+    final Expression expression;
+    final CharSequence line;
+
+    Pending(Expression expression, CharSequence line) {
+      this.expression = expression;
+      this.line = line;
+    }
+  }
+
+  EquTable() {
+    constants = new HashMap<>();
+    pending = new LinkedHashMap<>();
+  }
+
+  void add(String label, int value) {
+    pending.remove(label);
+    constants.put(label, new EquSymbol(label, value));
+  }
+
+  // evaluated later, errors are reported at line
+  void add(String label, Expression expression, CharSequence line) {
+    pending.put(label, new Pending(expression, line));
+  }
+
+  EquSymbol find(String label) {
+    return constants.get(label);
+  }
+
+  boolean isPending(String label) {
+    return pending.containsKey(label);
+  }
+
+  Expression getExpression(String label) {
+    return pending.get(label).expression;
+  }
+
+  // evaluated and pending constants
+  int size() {
+    return constants.size() + pending.size();
+  }
+
+  // evaluates every pending constant once, the constants it refers to first. A constant is on the stack
+  // while the ones it needs are evaluated, so meeting it there again means they refer to each other.
+  void resolveAll(SymbolTable symbolTable) throws SyntaxError {
+    Deque<String> stack = new ArrayDeque<>();
+    Set<String> onStack = new HashSet<>();
+    for (String label : new ArrayList<>(pending.keySet())) {
+      if (!pending.containsKey(label)) continue;
+      stack.push(label);
+      onStack.add(label);
+
+      while (!stack.isEmpty()) {
+        String current = stack.peek();
+        Pending constant = pending.get(current);
+        String next = null;
+        for (String symbol : constant.expression.getSymbols()) {
+          if (pending.containsKey(symbol)) {
+            next = symbol;
+            break;
+          }
+        }
+
+        if (next == null) {
+          evaluate(current, symbolTable);
+          stack.pop();
+          onStack.remove(current);
+        } else if (onStack.add(next)) {
+          stack.push(next);
+        } else {
+          throw new SyntaxError("Circular Constant: " + next).atLine(constant.line);
+        }
+      }
+    }
+  }
+
+  // evaluates a pending constant, errors are reported at its line
+  void evaluate(String label, SymbolTable symbolTable) throws SyntaxError {
+    Pending constant = pending.get(label);
+    try {
+      add(label, constant.expression.evaluate(symbolTable, this));
+    } catch (SyntaxError e) {
+      throw e.atLine(constant.line);
+    }
+  }
+
+  // data operands: names are looked up as constants, unknown ones resolve to 0, anything else is
+  // a number or an expression
+  int resolve(String param, SymbolTable symbolTable) throws SyntaxError {
+    if (Expression.isSymbol(param)) {
+      EquSymbol sym = constants.get(param);
+      return sym == null ? 0 : sym.getValue();
+    }
+    Expression expression = Expression.parse(param);
+    return expression.isConstant() ? expression.getValue() : expression.evaluate(symbolTable, this);
+  }
+}
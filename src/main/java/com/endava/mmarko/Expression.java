@@ -0,0 +1,305 @@
+package com.endava.mmarko;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// a constant expression of an .equ or an operand, e.g. (SIZE + 1) << 2 or end - start. Operators and their
+// precedence are C's: | ^ & << >> + - * / % and the unary - ~ +, arithmetic is on 32 bit ints.
+// Names refer to .equ constants or to labels. A label is an offset into its section, so only a difference
+// of two labels in the same section, possibly plus a constant, is a constant. Parts without names are
+// folded while parsing, the rest is evaluated once its names are known.
+class Expression {
+  private static final char NUMBER = '#';
+  private static final char SYMBOL = '@';
+  private static final char NEGATE = 'n';
+  private static final char SHIFT_LEFT = '<';
+  private static final char SHIFT_RIGHT = '>';
+  private static final String OPERATORS = "+-*/%&|^~<>()";
+  private static final int ABSOLUTE = -1;
+
+  private final char operator;
+  private final int value;
+  private final String symbol;
+  private final Expression left;
+  private final Expression right;
+  private List<String> symbols; // of the whole expression, set on the root
+
+  private Expression(char operator, int value, String symbol, Expression left, Expression right) {
+    this.operator = operator;
+    this.value = value;
+    this.symbol = symbol;
+    this.left = left;
+    this.right = right;
+  }
+
+  // an offset into section, or an absolute value
+  private static class Value {
+    final int value;
+    final int section;
+
+    Value(int value, int section) {
+      this.value = value;
+      this.section = section;
+    }
+  }
+
+  static Expression parse(String text) throws SyntaxError {
+    return parse(text, 0, text.length());
+  }
+
+  // text[from, to), a plain number is parsed as before expressions, with its sign after the radix prefix
+  static Expression parse(CharSequence text, int from, int to) throws SyntaxError {
+    int operator = indexOfOperator(text, from + 1, to);
+    char first = text.charAt(from);
+    if (Character.isDigit(first) || first == '-' || first == '+') {
+      if (operator < 0 || first == '0' && operator <= from + 2 && isSign(text.charAt(operator))) {
+        try {
+          return new Expression(NUMBER, NumberParser.parseInt(text, from, to), null, null, null);
+        } catch (NumberFormatException e) {
+          // e.g. -SIZE, a bad number is reported by the parser
+        }
+      }
+    }
+
+    Parser parser = new Parser(text, from, to);
+    Expression expression = parser.parseOr();
+    if (parser.skipWhitespace() < to) throw parser.unexpected();
+    expression.symbols = parser.symbols.isEmpty()
+        ? Collections.emptyList() : Collections.unmodifiableList(parser.symbols);
+    return expression;
+  }
+
+  // a name on its own, no number and no operators
+  static boolean isSymbol(CharSequence text, int from, int to) {
+    return from < to && !Character.isDigit(text.charAt(from)) && indexOfOperator(text, from, to) < 0;
+  }
+
+  static boolean isSymbol(String text) {
+    return isSymbol(text, 0, text.length());
+  }
+
+  private static int indexOfOperator(CharSequence text, int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = text.charAt(i);
+      if (OPERATORS.indexOf(c) >= 0 || Character.isWhitespace(c)) return i;
+    }
+    return -1;
+  }
+
+  private static boolean isSign(char c) {
+    return c == '-' || c == '+';
+  }
+
+  // no names, the value is known
+  boolean isConstant() {
+    return operator == NUMBER;
+  }
+
+  int getValue() {
+    return value;
+  }
+
+  // every name the expression uses, each once, in order
+  List<String> getSymbols() {
+    return symbols;
+  }
+
+  // every name has to be defined, and every constant resolved
+  int evaluate(SymbolTable symbolTable, EquTable equTable) throws SyntaxError {
+    Value result = evaluate(this, symbolTable, equTable);
+    if (result.section != ABSOLUTE) throw new SyntaxError("Not a Constant Expression");
+    return result.value;
+  }
+
+  private static Value evaluate(Expression e, SymbolTable symbolTable, EquTable equTable) throws SyntaxError {
+    switch (e.operator) {
+      case NUMBER: return new Value(e.value, ABSOLUTE);
+      case SYMBOL: return lookup(e.symbol, symbolTable, equTable);
+    }
+
+    Value left = evaluate(e.left, symbolTable, equTable);
+    if (e.right == null) {
+      requireAbsolute(left);
+      return new Value(e.operator == '~' ? ~left.value : -left.value, ABSOLUTE);
+    }
+
+    Value right = evaluate(e.right, symbolTable, equTable);
+    // a label plus or minus a number stays in its section, the difference of two labels in one section doesn't
+    if (e.operator == '+' && (left.section == ABSOLUTE || right.section == ABSOLUTE))
+      return new Value(left.value + right.value, left.section == ABSOLUTE ? right.section : left.section);
+    if (e.operator == '-' && (right.section == ABSOLUTE || right.section == left.section))
+      return new Value(left.value - right.value, right.section == ABSOLUTE ? left.section : ABSOLUTE);
+
+    requireAbsolute(left);
+    requireAbsolute(right);
+    return new Value(apply(e.operator, left.value, right.value), ABSOLUTE);
+  }
+
+  private static Value lookup(String symbol, SymbolTable symbolTable, EquTable equTable) throws SyntaxError {
+    if (equTable.isPending(symbol)) throw new SyntaxError("Circular Constant: " + symbol);
+    EquSymbol constant = equTable.find(symbol);
+    if (constant != null) return new Value(constant.getValue(), ABSOLUTE);
+
+    Symbol label = symbolTable.find(symbol);
+    if (label == null) throw new SyntaxError("Symbol not defined: " + symbol);
+    // an extern has no offset yet
+    if (label.getSection() < 0) throw new SyntaxError("Not a Constant Expression");
+    return new Value(label.getOffset(), label.getSection());
+  }
+
+  private static void requireAbsolute(Value value) throws SyntaxError {
+    if (value.section != ABSOLUTE) throw new SyntaxError("Not a Constant Expression");
+  }
+
+  private static int apply(char operator, int left, int right) throws SyntaxError {
+    switch (operator) {
+      case '|': return left | right;
+      case '^': return left ^ right;
+      case '&': return left & right;
+      case SHIFT_LEFT: return left << right;
+      case SHIFT_RIGHT: return left >> right;
+      case '+': return left + right;
+      case '-': return left - right;
+      case '*': return left * right;
+      case '/':
+        if (right == 0) throw new SyntaxError("Division by Zero");
+        return left / right;
+      case '%':
+        if (right == 0) throw new SyntaxError("Division by Zero");
+        return left % right;
+      default: throw new IllegalStateException("Unknown operator: " + operator);
+    }
+  }
+
+  // recursive descent, one method per precedence level
+  private static class Parser {
+    private final CharSequence text;
+    private final int from;
+    private final int to;
+    private int position;
+    final List<String> symbols = new ArrayList<>();
+
+    Parser(CharSequence text, int from, int to) {
+      this.text = text;
+      this.from = this.position = from;
+      this.to = to;
+    }
+
+    Expression parseOr() throws SyntaxError {
+      Expression left = parseXor();
+      while (skip('|')) left = binary('|', left, parseXor());
+      return left;
+    }
+
+    private Expression parseXor() throws SyntaxError {
+      Expression left = parseAnd();
+      while (skip('^')) left = binary('^', left, parseAnd());
+      return left;
+    }
+
+    private Expression parseAnd() throws SyntaxError {
+      Expression left = parseShift();
+      while (skip('&')) left = binary('&', left, parseShift());
+      return left;
+    }
+
+    private Expression parseShift() throws SyntaxError {
+      Expression left = parseSum();
+      while (true) {
+        if (skip("<<")) left = binary(SHIFT_LEFT, left, parseSum());
+        else if (skip(">>")) left = binary(SHIFT_RIGHT, left, parseSum());
+        else return left;
+      }
+    }
+
+    private Expression parseSum() throws SyntaxError {
+      Expression left = parseProduct();
+      while (true) {
+        if (skip('+')) left = binary('+', left, parseProduct());
+        else if (skip('-')) left = binary('-', left, parseProduct());
+        else return left;
+      }
+    }
+
+    private Expression parseProduct() throws SyntaxError {
+      Expression left = parseUnary();
+      while (true) {
+        if (skip('*')) left = binary('*', left, parseUnary());
+        else if (skip('/')) left = binary('/', left, parseUnary());
+        else if (skip('%')) left = binary('%', left, parseUnary());
+        else return left;
+      }
+    }
+
+    private Expression parseUnary() throws SyntaxError {
+      if (skip('+')) return parseUnary();
+      if (skip('-')) return unary(NEGATE, parseUnary());
+      if (skip('~')) return unary('~', parseUnary());
+      return parsePrimary();
+    }
+
+    private Expression parsePrimary() throws SyntaxError {
+      if (skip('(')) {
+        Expression inner = parseOr();
+        if (!skip(')')) throw new SyntaxError("')' expected");
+        return inner;
+      }
+
+      int start = skipWhitespace();
+      int end = start;
+      while (end < to && OPERATORS.indexOf(text.charAt(end)) < 0 && !Character.isWhitespace(text.charAt(end))) end++;
+      if (start == end) throw unexpected();
+      position = end;
+
+      if (Character.isDigit(text.charAt(start))) {
+        try {
+          return new Expression(NUMBER, NumberParser.parseInt(text, start, end), null, null, null);
+        } catch (NumberFormatException e) {
+          throw new SyntaxError("Bad Number: " + text.subSequence(start, end));
+        }
+      }
+      String name = text.subSequence(start, end).toString();
+      if (!symbols.contains(name)) symbols.add(name);
+      return new Expression(SYMBOL, 0, name, null, null);
+    }
+
+    // constant operands are folded right away
+    private static Expression unary(char operator, Expression operand) {
+      if (operand.isConstant())
+        return new Expression(NUMBER, operator == '~' ? ~operand.value : -operand.value, null, null, null);
+      return new Expression(operator, 0, null, operand, null);
+    }
+
+    private static Expression binary(char operator, Expression left, Expression right) throws SyntaxError {
+      if (left.isConstant() && right.isConstant())
+        return new Expression(NUMBER, apply(operator, left.value, right.value), null, null, null);
+      return new Expression(operator, 0, null, left, right);
+    }
+
+    int skipWhitespace() {
+      while (position < to && Character.isWhitespace(text.charAt(position))) position++;
+      return position;
+    }
+
+    private boolean skip(char c) {
+      if (skipWhitespace() >= to || text.charAt(position) != c) return false;
+      position++;
+      return true;
+    }
+
+    private boolean skip(String operator) {
+      skipWhitespace();
+      if (position + operator.length() > to) return false;
+      for (int i = 0; i < operator.length(); i++)
+        if (text.charAt(position + i) != operator.charAt(i)) return false;
+      position += operator.length();
+      return true;
+    }
+
+    SyntaxError unexpected() {
+      if (position >= to) return new SyntaxError("Bad Expression: " + text.subSequence(from, to));
+      return new SyntaxError("Unexpected Character in Expression: '" + text.charAt(position) + "'");
+    }
+  }
+}
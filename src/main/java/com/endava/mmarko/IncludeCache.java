@@ -0,0 +1,130 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// included files, parsed once and shared by every assembly in the process. A file is parsed again
+// once its modification time or size changes, and the least recently used files are dropped
+// once there are more than capacity of them.
+class IncludeCache {
+  static final int DEFAULT_CAPACITY = 256;
+  static final IncludeCache SHARED = new IncludeCache(DEFAULT_CAPACITY);
+
+  private final Map<Path, CachedFile> entries;
+  private long hits;
+  private long misses;
+
+  private static class CachedFile {
+    final FileTime modified;
+    final long size;
+    final List<Statement> statements;
+
+    CachedFile(FileTime modified, long size, List<Statement> statements) {
+      this.modified = modified;
+      this.size = size;
+      this.statements = statements;
+    }
+  }
+
+  // a parsed line, fixed once it's cached
+  private static class CachedStatement implements Statement {
+    private final String source;
+    private final String label;
+    private final LineParser.LineType type;
+    private final String sectionName;
+    private final String sectionFlags;
+    private final LineParser.DirectiveType directive;
+    private final List<String> params;
+    private final int value;
+    private final Expression expression;
+    private final String symbol;
+    private final InstructionParser instruction;
+
+    CachedStatement(LineParser parser) throws SyntaxError {
+      source = parser.getSource().toString();
+      label = parser.getLabel();
+      type = parser.getType();
+      sectionName = parser.getSectionName();
+      sectionFlags = parser.getSectionFlags();
+      directive = parser.getDirective();
+      params = Collections.unmodifiableList(parser.getParams());
+      value = parser.getValue();
+      expression = parser.getExpression();
+      symbol = parser.getSymbol();
+      // neither encoding nor folding modify a parsed instruction, so assemblies can share it
+      instruction = type == LineParser.LineType.INSTRUCTION ? parser.getInstructionParser() : null;
+    }
+
+    @Override public CharSequence getSource() { return source; }
+    @Override public String getLabel() { return label; }
+    @Override public LineParser.LineType getType() { return type; }
+    @Override public String getSectionName() { return sectionName; }
+    @Override public String getSectionFlags() { return sectionFlags; }
+    @Override public LineParser.DirectiveType getDirective() { return directive; }
+    @Override public List<String> getParams() { return params; }
+    @Override public int getValue() { return value; }
+    @Override public Expression getExpression() { return expression; }
+    @Override public String getSymbol() { return symbol; }
+    @Override public InstructionParser getInstructionParser() { return instruction; }
+  }
+
+  IncludeCache(int capacity) {
+    entries = new LinkedHashMap<Path, CachedFile>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Path, CachedFile> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  // the statements of an absolute, normalized path. Two assemblies missing the same file at once
+  // both parse it, the cache keeps the last one.
+  List<Statement> get(Path path) throws IOException, SyntaxError {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    synchronized (this) {
+      CachedFile entry = entries.get(path);
+      if (entry != null && entry.modified.equals(attributes.lastModifiedTime()) && entry.size == attributes.size()) {
+        hits++;
+        return entry.statements;
+      }
+      misses++;
+    }
+
+    List<Statement> statements = parse(path);
+    synchronized (this) {
+      entries.put(path, new CachedFile(attributes.lastModifiedTime(), attributes.size(), statements));
+    }
+    return statements;
+  }
+
+  private static List<Statement> parse(Path path) throws IOException, SyntaxError {
+    SourceReader reader = SourceReader.open(path.toString());
+    LineParser parser = new LineParser();
+    List<Statement> statements = new ArrayList<>();
+    for (CharSequence line; (line = reader.readSourceLine()) != null; ) {
+      try {
+        parser.parse(line);
+        statements.add(new CachedStatement(parser));
+      } catch (SyntaxError e) {
+        throw e.atLine(line);
+      }
+    }
+    return Collections.unmodifiableList(statements);
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+}
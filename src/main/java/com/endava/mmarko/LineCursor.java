@@ -0,0 +1,149 @@
+package com.endava.mmarko;
+
+// walks over a source line without copying it, tokens are [from, to) offsets into the line
+// and only become Strings when they have to outlive the line
+class LineCursor {
+  private CharSequence line;
+  private int position;
+  private int end;
+
+  private int tokenStart;
+  private int tokenEnd;
+
+  void reset(CharSequence line) {
+    this.line = line;
+    position = tokenStart = tokenEnd = 0;
+    end = line.length();
+  }
+
+  int position() {
+    return position;
+  }
+
+  void moveTo(int position) {
+    this.position = position;
+  }
+
+  // the rest of the line ends at end
+  void limit(int end) {
+    this.end = end;
+  }
+
+  boolean atEnd() {
+    return position >= end;
+  }
+
+  CharSequence getLine() {
+    return line;
+  }
+
+  char charAt(int index) {
+    return line.charAt(index);
+  }
+
+  // drops the whitespace around the rest of the line
+  void trim() {
+    while (position < end && Character.isWhitespace(line.charAt(position))) position++;
+    end = trimEnd(position, end);
+  }
+
+  int indexOf(char c, int from) {
+    for (int i = from; i < end; i++)
+      if (line.charAt(i) == c) return i;
+    return -1;
+  }
+
+  int indexOf(char c) {
+    return indexOf(c, position);
+  }
+
+  int lastIndexOf(char c) {
+    for (int i = end - 1; i >= position; i--)
+      if (line.charAt(i) == c) return i;
+    return -1;
+  }
+
+  // end of [from, to) without its trailing whitespace
+  int trimEnd(int from, int to) {
+    while (to > from && Character.isWhitespace(line.charAt(to - 1))) to--;
+    return to;
+  }
+
+  int skipWhitespace(int from, int to) {
+    while (from < to && Character.isWhitespace(line.charAt(from))) from++;
+    return from;
+  }
+
+  boolean containsWhitespace(int from, int to) {
+    for (int i = from; i < to; i++)
+      if (Character.isWhitespace(line.charAt(i))) return true;
+    return false;
+  }
+
+  boolean matches(int from, int to, String str) {
+    if (to - from != str.length()) return false;
+    for (int i = 0; i < str.length(); i++)
+      if (line.charAt(from + i) != str.charAt(i)) return false;
+    return true;
+  }
+
+  // skips word if the rest of the line starts with it, followed by whitespace or nothing
+  boolean skipWord(String word) {
+    int to = position + word.length();
+    if (to > end || !matches(position, to, word)) return false;
+    if (to < end && !Character.isWhitespace(line.charAt(to))) return false;
+    position = to;
+    return true;
+  }
+
+  // makes the characters up to the next whitespace the current token
+  void nextWord() {
+    position = skipWhitespace(position, end);
+    tokenStart = position;
+    while (position < end && !Character.isWhitespace(line.charAt(position))) position++;
+    tokenEnd = position;
+  }
+
+  // makes the next comma separated parameter, without surrounding whitespace, the current token,
+  // false once nothing but whitespace is left
+  boolean nextParam() throws SyntaxError {
+    position = skipWhitespace(position, end);
+    if (position >= end) return false;
+
+    int comma = indexOf(',');
+    int stop = comma < 0 ? end : comma;
+    tokenStart = position;
+    tokenEnd = trimEnd(position, stop);
+    if (tokenStart == tokenEnd) throw new SyntaxError("Missing Parameter");
+    position = comma < 0 ? end : comma + 1;
+    return true;
+  }
+
+  int tokenStart() {
+    return tokenStart;
+  }
+
+  int tokenEnd() {
+    return tokenEnd;
+  }
+
+  int tokenLength() {
+    return tokenEnd - tokenStart;
+  }
+
+  String token() {
+    return substring(tokenStart, tokenEnd);
+  }
+
+  String substring(int from, int to) {
+    return line.subSequence(from, to).toString();
+  }
+
+  int parseInt(int from, int to) throws SyntaxError {
+    try {
+      return NumberParser.parseInt(line, from, to);
+    } catch (NumberFormatException e) {
+      throw new SyntaxError("Bad Number: " + substring(from, to));
+    }
+  }
+}
@@ -1,109 +1,126 @@
 package com.endava.mmarko;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-class LineParser {
+class LineParser implements Statement {
   enum LineType { EMPTY, SECTION, DIRECTIVE, INSTRUCTION }
-  enum SectionType { TEXT, DATA, BSS, SECTION;
-    @Override public String toString() { return super.toString().toLowerCase(); } }
-  enum DirectiveType { BYTE, WORD, ALIGN, SKIP, EXTERN, GLOBAL, EQU;
-    @Override public String toString() { return super.toString().toLowerCase(); }
-  }
-
+  enum SectionType { TEXT("text"), DATA("data"), BSS("bss"), SECTION("section");
+    private final String keyword;
+    SectionType(String keyword) { this.keyword = keyword; }
+    @Override public String toString() { return keyword; } }
+  enum DirectiveType { BYTE("byte"), WORD("word"), ALIGN("align"), SKIP("skip"), EXTERN("extern"),
+    GLOBAL("global"), EQU("equ"), INCLUDE("include");
+    private final String keyword;
+    DirectiveType(String keyword) { this.keyword = keyword; }
+    @Override public String toString() { return keyword; }
+    boolean needsSection() { return this == BYTE || this == WORD || this == ALIGN || this == SKIP; }
+  }
+
+  private static final SectionType[] SECTION_TYPES = SectionType.values();
+  private static final DirectiveType[] DIRECTIVE_TYPES = DirectiveType.values();
+  private static final String INCLUDE = ".include";
+
+  // one parser is reused for every line, so the cursor is too
+  private final LineCursor cursor = new LineCursor();
+
+  private CharSequence line;
   private String label;
   private String sectionName;
-  private String directiveName;
-  private String instruction;
+  private DirectiveType directive;
 
   private LineType type;
 
-  private final List<Integer> values;
+  private List<String> params;
+  private int value;
+  private Expression expression;
   private String symbol;
   private String sectionFlags;
 
-
-  LineParser(String line, List<EquSymbol> equTable) throws SyntaxError {
-    values = new LinkedList<>();
-    label = sectionName = directiveName = instruction = "";
+  // parses the line in place, the results of the previous line are overwritten
+  void parse(CharSequence line) throws SyntaxError {
+    this.line = line;
+    params = Collections.emptyList();
+    label = sectionName = "";
+    directive = null;
+    symbol = sectionFlags = null;
+    value = 0;
+    expression = null;
     type = LineType.EMPTY;
-    parse(line, equTable);
-  }
 
-  private void parse(String line, List<EquSymbol> equTable) throws SyntaxError {
-    line = parseComment(line);
-    line = parseLabel(line);
+    cursor.reset(line);
+    int comment = cursor.indexOf(';');
+    if (comment >= 0) cursor.limit(comment);
+    parseLabel();
+    cursor.trim();
+
+    if (cursor.atEnd()) return;
 
-    if (line.isEmpty()) {
-      type = LineType.EMPTY;
+    // checked first, the path may have dots of its own
+    if (cursor.skipWord(INCLUDE)) {
+      parseInclude();
       return;
     }
 
     //if directive or section
-    int pos = line.lastIndexOf('.');
+    int pos = cursor.lastIndexOf('.');
     if (pos >= 0) {
-      if (pos != 0) throw new SyntaxError("Unexpected '.' character");
-      line = line.substring(1);
+      if (pos != cursor.position()) throw new SyntaxError("Unexpected '.' character");
+      cursor.moveTo(pos + 1);
 
-      boolean shouldLeave;
-      shouldLeave = parseIfSection(line);
-      if (shouldLeave) return;
-      shouldLeave = parseIfDirective(line, equTable);
-      if (shouldLeave) return;
+      if (parseIfSection() || parseIfDirective()) return;
 
       //if none but had a '.', throw syntax error
       throw new SyntaxError("Unknown Section or Directive");
     }
 
-    //instruction
+    //instruction, the cursor is left on it
     type = LineType.INSTRUCTION;
-    instruction = line;
   }
 
-  private String parseComment(String line) {
-    int pos = line.indexOf(';');
-    if (pos >= 0) {
-      line = line.substring(0, pos);
-    }
-    return line;
-  }
-
-  private String parseLabel(String line) throws SyntaxError {
-    if (line.contains(":")) {
-      String[] split = line.split(":");
-      if (split.length == 1 || split.length == 2) {
-        if (split.length == 2) {
-          line = split[1];
-        } else {
-          line = "";
-        }
-        label = split[0].trim();
-        //label can't be empty and can't contain spaces
-        if (label.isEmpty() || label.contains(" \t")) throw new SyntaxError("Bad Label Name");
-      }
-      else {
-        throw new SyntaxError("Unexpected Character: ':'");
-      }
+  private void parseLabel() throws SyntaxError {
+    int colon = cursor.indexOf(':');
+    if (colon < 0) return;
+    if (cursor.indexOf(':', colon + 1) >= 0) throw new SyntaxError("Unexpected Character: ':'");
+
+    int from = cursor.skipWhitespace(cursor.position(), colon);
+    int to = cursor.trimEnd(from, colon);
+    //label can't be empty and can't contain spaces
+    if (from == to || cursor.containsWhitespace(from, to)) throw new SyntaxError("Bad Label Name");
+    label = cursor.substring(from, to);
+    cursor.moveTo(colon + 1);
+  }
+
+  // the path can be quoted
+  private void parseInclude() throws SyntaxError {
+    type = LineType.DIRECTIVE;
+    directive = DirectiveType.INCLUDE;
+    if (!cursor.nextParam()) throw new SyntaxError("Missing Parameter");
+    int from = cursor.tokenStart();
+    int to = cursor.tokenEnd();
+    if (to - from >= 2 && cursor.charAt(from) == '"' && cursor.charAt(to - 1) == '"') {
+      from++;
+      to--;
     }
-    return line.trim();
+    if (from == to || cursor.nextParam()) throw new SyntaxError("Bad Include File");
+    symbol = cursor.substring(from, to);
   }
 
-  private boolean parseIfSection(String line) throws SyntaxError {
-    for (SectionType section : SectionType.values()) {
-      if (line.indexOf(section.toString()) == 0) {
+  private boolean parseIfSection() throws SyntaxError {
+    for (SectionType section : SECTION_TYPES) {
+      if (cursor.skipWord(section.keyword)) {
         type = LineType.SECTION;
-        sectionName = section.toString();
         switch (section) {
           case SECTION:
-            line = line.substring(sectionName.length());
-            ParameterHelper parameterHelper = new ParameterHelper(line);
-            sectionName = parameterHelper.getParam(0);
-            if (sectionName.length() > 23) throw new SyntaxError("Symbol name too long, max characters: 23");
-            sectionFlags = parameterHelper.getParam(1);
+            if (!cursor.nextParam()) throw new SyntaxError("Missing Parameter");
+            if (cursor.tokenLength() > 23) throw new SyntaxError("Symbol name too long, max characters: 23");
+            sectionName = cursor.token();
+            sectionFlags = cursor.nextParam() ? cursor.token() : "";
             break;
-          case TEXT: sectionFlags = "rx";  break;
-          case DATA: sectionFlags = "rw"; break;
-          case BSS: sectionFlags = "r"; break;
+          case TEXT: sectionName = section.keyword; sectionFlags = "rx";  break;
+          case DATA: sectionName = section.keyword; sectionFlags = "rw"; break;
+          case BSS: sectionName = section.keyword; sectionFlags = "r"; break;
         }
         return true;
       }
@@ -111,78 +128,98 @@ class LineParser {
     return false;
   }
 
-  private boolean parseIfDirective(String line, List<EquSymbol> equTable) throws SyntaxError {
-    for (DirectiveType directive : DirectiveType.values())
-      if (line.indexOf(directive.toString()) == 0) {
+  private boolean parseIfDirective() throws SyntaxError {
+    for (DirectiveType directive : DIRECTIVE_TYPES)
+      if (cursor.skipWord(directive.keyword)) {
         type = LineType.DIRECTIVE;
-        directiveName = directive.toString();
-        line = line.substring(directiveName.length());
-        ParameterHelper parameterHelper = new ParameterHelper(line);
+        this.directive = directive;
+        if (!cursor.nextParam()) throw new SyntaxError("Missing Parameter");
         switch (directive) {
           case WORD: case BYTE: {
-            for (String param : parameterHelper.getParams()) {
-              int value = 0;
-              try {
-                NumberParser.parseInt(param);
-              }
-              catch(NumberFormatException ignored) { }
-              for (EquSymbol sym : equTable)
-                if (param.equals(sym.getLabel())) {
-                  value = sym.getValue();
-                  break;
-                }
-              values.add(value);
-            }
+            // values are resolved in the second pass, once every constant is known
+            params = new ArrayList<>();
+            do params.add(cursor.token()); while (cursor.nextParam());
             break;
           }
-          case SKIP: case ALIGN: values.add(NumberParser.parseInt(parameterHelper.getParam(0))); break;
+          case SKIP: case ALIGN: value = cursor.parseInt(cursor.tokenStart(), cursor.tokenEnd()); break;
           case EQU: {
-            if ("".equals(parameterHelper.getParam(1))) throw new SyntaxError("Missing Parameter");
-            symbol = parameterHelper.getParam(0);
-            values.add(NumberParser.parseInt(parameterHelper.getParam(1)));
-            if (symbol.length() > 23) throw new SyntaxError("Symbol name too long, max characters: 23");
+            if (cursor.tokenLength() > 23) throw new SyntaxError("Symbol name too long, max characters: 23");
+            symbol = cursor.token();
+            if (!cursor.nextParam()) throw new SyntaxError("Missing Parameter");
+            // evaluated once every symbol is known, unless it's a number
+            expression = Expression.parse(line, cursor.tokenStart(), cursor.tokenEnd());
+            if (expression.isConstant()) {
+              value = expression.getValue();
+              expression = null;
+            }
             break;
           }
-          case EXTERN: case GLOBAL: symbol = parameterHelper.getParam(0); break;
+          case EXTERN: case GLOBAL: symbol = cursor.token(); break;
+          case INCLUDE: break; // handled by parseInclude
         }
         return true;
       }
     return false;
   }
 
-  String getLabel() {
+  @Override
+  public String getLabel() {
     return label;
   }
 
-  String getSectionName() {
+  @Override
+  public String getSectionName() {
     return sectionName;
   }
 
-  String getDirectiveName() {
-    return directiveName;
+  @Override
+  public DirectiveType getDirective() {
+    return directive;
   }
 
-  String getInstruction() {
-    return instruction;
+  @Override
+  public CharSequence getSource() {
+    return line;
   }
 
-  LineType getType() {
+  // positioned at the start of the instruction
+  LineCursor getInstruction() {
+    return cursor;
+  }
+
+  // parses the instruction the cursor is on, once per line
+  @Override
+  public InstructionParser getInstructionParser() throws SyntaxError {
+    return new InstructionParser(cursor);
+  }
+
+  @Override
+  public LineType getType() {
     return type;
   }
 
-  List<Integer> getValues() {
-    return values;
+  @Override
+  public List<String> getParams() {
+    return params;
+  }
+
+  @Override
+  public int getValue() {
+    return value;
   }
 
-  int getValue() {
-    return values.get(0);
+  @Override
+  public Expression getExpression() {
+    return expression;
   }
 
-  String getSymbol() {
+  @Override
+  public String getSymbol() {
     return symbol;
   }
 
-  String getSectionFlags() {
+  @Override
+  public String getSectionFlags() {
     return sectionFlags;
   }
 }
@@ -0,0 +1,63 @@
+package com.endava.mmarko;
+
+import java.io.*;
+
+// writes every section as soon as it's closed, so only the current section is ever held in memory
+class ListingWriter implements OutputWriter {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int BYTES_PER_CHUNK = 4096;
+
+  private final Writer output;
+  private final char[] chunk;
+
+  ListingWriter(String output) throws IOException {
+    this(new FileWriter(new File(output)));
+  }
+
+  ListingWriter(Writer output) {
+    this.output = new BufferedWriter(output, BUFFER_SIZE);
+    chunk = new char[3 * BYTES_PER_CHUNK];
+  }
+
+  @Override
+  public void start(SymbolTable symbolTable, SectionTable sectionTable) throws IOException {
+    symbolTable.print(output);
+    sectionTable.print(output);
+  }
+
+  @Override
+  public void writeSection(SectionInfo info) throws IOException {
+    printHeader(info.getName());
+    for (int from = 0; from < info.getSize(); from += BYTES_PER_CHUNK) {
+      int to = Math.min(from + BYTES_PER_CHUNK, info.getSize());
+      int length = NumberParser.format(info.getBytes(), from, to, chunk, 0);
+      output.write(chunk, 0, length);
+    }
+    printRelocationTable(info);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    output.write("\n\n\n");
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+
+  private void printHeader(String name) throws IOException {
+    String outputFormatting = "======" + name
+        + "===================================================================================================";
+    output.append("\n").append(outputFormatting, 0, 105).append("\n");
+  }
+
+  private void printRelocationTable(SectionInfo info) throws IOException {
+    printHeader(".rel " + info.getName());
+    output.write("      Offset            Type          Section         Symbol\n");
+    output.write("---------------------------------------------------------------------------------------------------------\n");
+    info.getRelocationTable().print(output);
+    output.write("=========================================================================================================");
+  }
+}
@@ -0,0 +1,81 @@
+package com.endava.mmarko;
+
+// instruction descriptors: opcode, number of operands and the addressing modes allowed for the destination
+enum Mnemonic {
+  HALT("halt", 0x01, 0), XCHG("xchg", 0x02, 2), INT("int", 0x03, 1, true), MOV("mov", 0x04, 2),
+  ADD("add", 0x05, 2), SUB("sub", 0x06, 2), MUL("mul", 0x07, 2), DIV("div", 0x08, 2), CMP("cmp", 0x09, 2),
+  NOT("not", 0x0A, 1), AND("and", 0x0B, 2), OR("or", 0x0C, 2), XOR("xor", 0x0D, 2), TEST("test", 0x0E, 2),
+  SHL("shl", 0x0F, 2), SHR("shr", 0x10, 2), PUSH("push", 0x11, 1, true), POP("pop", 0x12, 1),
+  JMP("jmp", 0x13, 1), JEQ("jeq", 0x14, 1), JNE("jne", 0x15, 1), JGT("jgt", 0x16, 1), CALL("call", 0x17, 1),
+  RET("ret", 0x18, 0), IRET("iret", 0x19, 0);
+
+  // addressing mode codes, as encoded in the operand descriptor byte
+  static final int IMM = 0x0;
+  static final int REG = 0x1;
+  static final int REGIND = 0x2;
+  static final int REGIND8 = 0x3;
+  static final int REGIND16 = 0x4;
+  static final int MEM = 0x5;
+
+  private static final int ALL_MODES = 0x3F;
+
+  // perfect hash of the names, see hash()
+  private static final Mnemonic[] TABLE = new Mnemonic[64];
+
+  static {
+    for (Mnemonic mnemonic : values()) {
+      String name = mnemonic.name;
+      int h = hash(name.charAt(0), name.charAt(1), name.charAt(name.length() - 1), name.length());
+      if (TABLE[h] != null) throw new IllegalStateException("Mnemonic hash collision: " + name);
+      TABLE[h] = mnemonic;
+    }
+  }
+
+  private final String name;
+  private final int opcode;
+  private final int operands;
+  private final int destinationModes;
+
+  Mnemonic(String name, int opcode, int operands) {
+    this(name, opcode, operands, false);
+  }
+
+  Mnemonic(String name, int opcode, int operands, boolean immediateDestination) {
+    this.name = name;
+    this.opcode = opcode;
+    this.operands = operands;
+    this.destinationModes = immediateDestination ? ALL_MODES : ALL_MODES & ~(1 << IMM);
+  }
+
+  // the mnemonic named by cursor[from, to), null if there is none
+  static Mnemonic find(LineCursor cursor, int from, int to) {
+    if (to - from < 2) return null;
+    Mnemonic mnemonic = TABLE[hash(cursor.charAt(from), cursor.charAt(from + 1), cursor.charAt(to - 1), to - from)];
+    return mnemonic != null && cursor.matches(from, to, mnemonic.name) ? mnemonic : null;
+  }
+
+  private static int hash(char first, char second, char last, int length) {
+    return (first * 5 + second * 13 + last + length) & 63;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  int getOpcode() {
+    return opcode;
+  }
+
+  int getOperands() {
+    return operands;
+  }
+
+  boolean allowsDestination(int addressingMode) {
+    return (destinationModes & (1 << addressingMode)) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -1,60 +1,79 @@
 package com.endava.mmarko;
 
 class NumberParser {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  private static final int BYTES_PER_LINE = 35;
 
   static int parseInt(String str) {
-    if (str.length() > 2 && "0x".equals(str.substring(0, 2))) {
-      return Integer.parseInt(str.substring(2), 16);
-    }
-    if(str.length() > 2 && "0b".equals(str.substring(0, 2))) {
-      return Integer.parseInt(str.substring(2), 2);
-    }
-    if(str.length() > 1 && "0".equals(str.substring(0, 1))) {
-      return Integer.parseInt(str.substring(1), 8);
-    }
-    return Integer.parseInt(str);
+    return parseInt(str, 0, str.length());
   }
 
-  static String swapBytes(String str) {
-    if (str.length() != 4) {
-      return str;
+  // parses str[from, to) in place, accepts the same 0x, 0b and 0 (octal) prefixes as the source code
+  static int parseInt(CharSequence str, int from, int to) {
+    int length = to - from;
+    int radix = 10;
+    if (length > 2 && str.charAt(from) == '0' && str.charAt(from + 1) == 'x') {
+      radix = 16;
+      from += 2;
+    } else if (length > 2 && str.charAt(from) == '0' && str.charAt(from + 1) == 'b') {
+      radix = 2;
+      from += 2;
+    } else if (length > 1 && str.charAt(from) == '0') {
+      radix = 8;
+      from += 1;
     }
-    return str.substring(2) + str.substring(0, 2);
-  }
 
-  static String format(String str) {
-    StringBuilder result = new StringBuilder();
-    int breakPoint = 68;
-
-    for (int i = 0; i < str.length(); i++, breakPoint--) {
-      result.append(str.charAt(i));
-      if (i % 2 == 1) {
-        if (breakPoint < 0) {
-          result.append("\n");
-          breakPoint = 68;
-        }
-        else {
-          result.append(" ");
-        }
-      }
+    boolean negative = false;
+    if (from < to && (str.charAt(from) == '-' || str.charAt(from) == '+')) {
+      negative = str.charAt(from) == '-';
+      from++;
     }
+    if (from >= to) throw badNumber(str, from, to);
 
-    return result.toString();
+    long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+    long result = 0;
+    for (int i = from; i < to; i++) {
+      int digit = Character.digit(str.charAt(i), radix);
+      if (digit < 0) throw badNumber(str, from, to);
+      result = result * radix + digit;
+      if (result > limit) throw badNumber(str, from, to);
+    }
+    return (int) (negative ? -result : result);
   }
 
-  static String toHex(long value, int byteSize) {
-    value = value % (long) Math.pow(2, byteSize * 8);
+  private static NumberFormatException badNumber(CharSequence str, int from, int to) {
+    return new NumberFormatException("For input string: \"" + str.subSequence(from, to) + "\"");
+  }
 
-    StringBuilder result = new StringBuilder(Long.toHexString(value));
+  // two hex digits per byte, a new line after every BYTES_PER_LINE bytes
+  static String format(byte[] bytes, int length) {
+    char[] result = new char[3 * length];
+    format(bytes, 0, length, result, 0);
+    return new String(result);
+  }
 
-    if(result.length() > byteSize * 2) {
-      return result.toString().substring(0, byteSize * 2);
+  // formats bytes[from, to) into dst (3 chars per byte) and returns the position after the last char,
+  // line breaks depend only on the byte index, so a section can be formatted in chunks
+  static int format(byte[] bytes, int from, int to, char[] dst, int dstPos) {
+    for (int i = from; i < to; i++) {
+      dst[dstPos++] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      dst[dstPos++] = HEX_DIGITS[bytes[i] & 0xF];
+      dst[dstPos++] = i % BYTES_PER_LINE == BYTES_PER_LINE - 1 ? '\n' : ' ';
     }
-    else {
-      int missingChars = byteSize * 2 - result.length();
-      result.insert(0, "0".repeat(missingChars));
+    return dstPos;
+  }
+
+  static String toHex(long value, int byteSize) {
+    char[] result = new char[2 * byteSize];
+    writeHex(value, byteSize, result, 0);
+    return new String(result);
+  }
 
-      return result.toString();
+  // writes the lowest byteSize bytes of value into dst and returns the position after the last digit
+  static int writeHex(long value, int byteSize, char[] dst, int dstPos) {
+    for (int shift = 8 * byteSize - 4; shift >= 0; shift -= 4) {
+      dst[dstPos++] = HEX_DIGITS[(int) (value >>> shift) & 0xF];
     }
+    return dstPos;
   }
 }
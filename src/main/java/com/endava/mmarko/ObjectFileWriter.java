@@ -0,0 +1,178 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// ELF-like relocatable object file, every value is a little-endian 32-bit integer.
+// Layout: header, section headers, symbol table, relocation tables, string table, section contents.
+// Names are offsets into the string table, all records have a fixed size so a loader can index them directly.
+class ObjectFileWriter implements OutputWriter {
+  static final byte[] MAGIC = { 0x7F, 'S', 'S', 'O' };
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 36;
+  static final int SECTION_HEADER_SIZE = 24;
+  static final int SYMBOL_ENTRY_SIZE = 16;
+  static final int RELOCATION_ENTRY_SIZE = 12;
+
+  static final int FLAG_READ = 0x1;
+  static final int FLAG_WRITE = 0x2;
+  static final int FLAG_EXECUTE = 0x4;
+
+  static final int BINDING_LOCAL = 0;
+  static final int BINDING_GLOBAL = 1;
+
+  private final WritableByteChannel output;
+  private final List<SectionContents> sections;
+  private SymbolTable symbolTable;
+  private SectionTable sectionTable;
+
+  private static class SectionContents {
+    final byte[] bytes;
+    final int size;
+    final RelocationTable relocations;
+
+    SectionContents(SectionInfo info) {
+      // the section info gets new buffers for the next section, so these stay untouched
+      bytes = info.getBytes();
+      size = info.getSize();
+      relocations = info.getRelocationTable();
+    }
+  }
+
+  ObjectFileWriter(String output) throws IOException {
+    this(FileChannel.open(Paths.get(output),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+  }
+
+  ObjectFileWriter(WritableByteChannel output) {
+    this.output = output;
+    sections = new ArrayList<>();
+  }
+
+  @Override
+  public void start(SymbolTable symbolTable, SectionTable sectionTable) {
+    this.symbolTable = symbolTable;
+    this.sectionTable = sectionTable;
+  }
+
+  @Override
+  public void writeSection(SectionInfo section) {
+    sections.add(new SectionContents(section));
+  }
+
+  @Override
+  public void finish() throws IOException {
+    List<Section> headers = sectionTable.getSections();
+    List<Symbol> symbols = new ArrayList<>(symbolTable.getSymbols());
+
+    Map<String, Integer> symbolIndexes = new HashMap<>();
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    int stringTableSize = 1; // offset 0 is the empty name
+    for (Section section : headers) stringTableSize += addString(strings, section.getLabel(), stringTableSize);
+    for (Symbol symbol : symbols) {
+      symbolIndexes.put(symbol.getLabel(), symbolIndexes.size());
+      stringTableSize += addString(strings, symbol.getLabel(), stringTableSize);
+    }
+
+    int relocationCount = 0;
+    int dataSize = 0;
+    for (SectionContents section : sections) {
+      relocationCount += section.relocations.size();
+      dataSize += section.size;
+    }
+
+    int sectionHeadersOffset = HEADER_SIZE;
+    int symbolTableOffset = sectionHeadersOffset + headers.size() * SECTION_HEADER_SIZE;
+    int relocationsOffset = symbolTableOffset + symbols.size() * SYMBOL_ENTRY_SIZE;
+    int stringTableOffset = relocationsOffset + relocationCount * RELOCATION_ENTRY_SIZE;
+    int dataOffset = stringTableOffset + stringTableSize;
+
+    ByteBuffer buffer = ByteBuffer.allocate(dataOffset + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+
+    buffer.put(MAGIC)
+        .putInt(VERSION)
+        .putInt(headers.size())
+        .putInt(symbols.size())
+        .putInt(relocationCount)
+        .putInt(sectionHeadersOffset)
+        .putInt(symbolTableOffset)
+        .putInt(stringTableOffset)
+        .putInt(stringTableSize);
+
+    int relocationOffset = relocationsOffset;
+    int contentsOffset = dataOffset;
+    for (int i = 0; i < headers.size(); i++) {
+      SectionContents contents = sections.get(i);
+      buffer.putInt(strings.get(headers.get(i).getLabel()))
+          .putInt(parseFlags(headers.get(i).getFlag()))
+          .putInt(contentsOffset)
+          .putInt(contents.size)
+          .putInt(relocationOffset)
+          .putInt(contents.relocations.size());
+      contentsOffset += contents.size;
+      relocationOffset += contents.relocations.size() * RELOCATION_ENTRY_SIZE;
+    }
+
+    for (Symbol symbol : symbols) {
+      buffer.putInt(strings.get(symbol.getLabel()))
+          .putInt(symbol.getSection())
+          .putInt(symbol.getOffset())
+          .putInt(symbol.isGlobal() ? BINDING_GLOBAL : BINDING_LOCAL);
+    }
+
+    for (SectionContents section : sections) {
+      // a table refers to its symbols by their index among its own names
+      List<String> names = section.relocations.getSymbolNames();
+      int[] indexes = new int[names.size()];
+      for (int i = 0; i < indexes.length; i++) indexes[i] = symbolIndexes.get(names.get(i));
+
+      RelocationTable relocations = section.relocations;
+      for (int i = 0; i < relocations.size(); i++) {
+        buffer.putInt(relocations.getOffset(i))
+            .putInt(relocations.getTypeCode(i))
+            .putInt(indexes[relocations.getSymbolIndex(i)]);
+      }
+    }
+
+    buffer.put((byte) 0);
+    for (String string : strings.keySet()) {
+      buffer.put(string.getBytes(StandardCharsets.UTF_8)).put((byte) 0);
+    }
+
+    for (SectionContents section : sections) buffer.put(section.bytes, 0, section.size);
+
+    buffer.flip();
+    while (buffer.hasRemaining()) output.write(buffer);
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+
+  // returns the number of bytes the string adds to the string table
+  private static int addString(Map<String, Integer> strings, String string, int offset) {
+    if (strings.putIfAbsent(string, offset) != null) return 0;
+    return string.getBytes(StandardCharsets.UTF_8).length + 1;
+  }
+
+  private static int parseFlags(String flags) {
+    int result = 0;
+    if (flags.indexOf('r') >= 0) result |= FLAG_READ;
+    if (flags.indexOf('w') >= 0) result |= FLAG_WRITE;
+    if (flags.indexOf('x') >= 0) result |= FLAG_EXECUTE;
+    return result;
+  }
+}
@@ -0,0 +1,301 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// encodes every line as soon as it's read, references to symbols that aren't defined yet are
+// recorded as fixups and patched into the section contents once the symbol gets defined. Expressions
+// and constants defined by them wait for one unknown symbol at a time, until none is left.
+class OnePassAssembler extends BaseAssembler implements OperandResolver {
+  private final OperandResolver definedSymbols;
+  private final List<SectionInfo> sections;
+  private final Map<String, List<Fixup>> fixups;
+  private final Map<String, List<String>> waitingConstants; // by the symbol they wait for
+  private final List<ParsedLine> globals;
+  private SectionInfo section;
+  private CharSequence line; // of the statement being assembled
+
+  private static class Fixup {
+    final SectionInfo section;
+    final int offset;
+    final int size;
+    final RelocationType relocationType; // null for data directives
+    final boolean constantAllowed;
+    final int relocationIndex; // reserved, so relocations stay in source order
+    final CharSequence line;
+    final Expression expression; // patched with its value instead of a symbol's
+
+    Fixup(SectionInfo section, int offset, int size, RelocationType relocationType,
+          boolean constantAllowed, int relocationIndex, CharSequence line) {
+      this(section, offset, size, relocationType, constantAllowed, relocationIndex, line, null);
+    }
+
+    Fixup(SectionInfo section, int offset, int size, Expression expression, CharSequence line) {
+      this(section, offset, size, null, true, -1, line, expression);
+    }
+
+    private Fixup(SectionInfo section, int offset, int size, RelocationType relocationType,
+          boolean constantAllowed, int relocationIndex, CharSequence line, Expression expression) {
+      this.section = section;
+      this.offset = offset;
+      this.size = size;
+      this.relocationType = relocationType;
+      this.constantAllowed = constantAllowed;
+      this.relocationIndex = relocationIndex;
+      this.line = line;
+      this.expression = expression;
+    }
+  }
+
+  OnePassAssembler(String input, String output, OutputFormat format) throws IOException {
+    this(SourceReader.open(input), OutputWriter.create(output, format));
+  }
+
+  OnePassAssembler(SourceReader input, OutputWriter output) {
+    super(input, output);
+    definedSymbols = new SymbolResolver(symbolTable, equTable);
+    sections = new ArrayList<>();
+    fixups = new LinkedHashMap<>();
+    waitingConstants = new HashMap<>();
+    globals = new ArrayList<>();
+    section = new SectionInfo();
+  }
+
+  @Override
+  public void assemble() throws IOException, SyntaxError {
+    AssemblerEvents.Assembly event = new AssemblerEvents.Assembly();
+    event.begin();
+    boolean successful = false;
+    try {
+      assembleSource();
+      successful = true;
+    } finally {
+      event.record(getSourceName(), successful);
+    }
+  }
+
+  private void assembleSource() throws IOException, SyntaxError {
+    AssemblerEvents.Pass pass = new AssemblerEvents.Pass();
+    pass.begin();
+    readSource();
+    long wall = System.nanoTime(), cpu = stats == null ? 0 : AssemblyStats.cpuTime();
+
+    LineParser lineParser = new LineParser();
+    CharSequence source;
+    while ((source = nextLine()) != null) {
+      AssemblerEvents.SlowLine lineEvent = new AssemblerEvents.SlowLine();
+      lineEvent.begin();
+      int offset = section.getOffset();
+      try {
+        lineParser.parse(source);
+        assembleLine(lineParser);
+        // a section line starts its section
+        lineEvent.record("assemble", source, section.getName(),
+            lineParser.getType() == LineParser.LineType.SECTION ? 0 : offset);
+      } catch (SyntaxError e) {
+        throw e.atLine(source);
+      }
+    }
+
+    applyGlobals(globals);
+    checkUnresolved();
+    if (stats != null) {
+      stats.countTables(symbolTable, equTable, sectionTable);
+      stats.add(AssemblyStats.Phase.FIRST_PASS, wall, cpu);
+    }
+    pass.record(getSourceName(), "one");
+
+    output.start(symbolTable, sectionTable);
+    for (SectionInfo info : sections) {
+      // slots reserved for forward references that turned out to be constants
+      info.getRelocationTable().removeUnset();
+      output.writeSection(info);
+    }
+    output.finish();
+  }
+
+  @Override
+  public int resolve(String symbol, RelocationType relocationType, boolean constantAllowed,
+                     int offset, SectionInfo section) throws SyntaxError {
+    if (isKnown(symbol))
+      return definedSymbols.resolve(symbol, relocationType, constantAllowed, offset, section);
+
+    addFixup(symbol, new Fixup(section, offset, relocationType.getSize(), relocationType, constantAllowed,
+        section.getRelocationTable().reserve(), line));
+    return 0;
+  }
+
+  @Override
+  public int resolve(Expression expression, int index, int size, SectionInfo section) throws SyntaxError {
+    String unknown = firstUnknown(expression);
+    if (unknown == null) return expression.evaluate(symbolTable, equTable);
+    addFixup(unknown, new Fixup(section, index, size, expression, line));
+    return 0;
+  }
+
+  private void assembleLine(Statement statement) throws SyntaxError {
+    // fixups and globals refer to the statement's own line, which is in the included file for included ones
+    line = statement.getSource();
+    addLabel(statement.getLabel(), section);
+    resolveFixups(statement.getLabel());
+
+    switch (statement.getType()) {
+      case SECTION:
+        section = new SectionInfo(sections.size(), statement.getSectionName());
+        sections.add(section);
+        sectionTable.add(statement.getSectionName(), section.getId(), statement.getSectionFlags());
+        break;
+      case DIRECTIVE: assembleDirective(statement); break;
+      case INSTRUCTION: assembleInstruction(statement); break;
+    }
+  }
+
+  private void assembleInstruction(Statement statement) throws SyntaxError {
+    if (section.isInvalid()) throw new SyntaxError("Not in a Section");
+    InstructionParser instrParser = statement.getInstructionParser();
+    if (stats != null) stats.countInstruction(instrParser);
+    instrParser.encode(section.getOffset(), section, this);
+    section.incrementOffset(instrParser.getInstrSize());
+  }
+
+  private void assembleDirective(Statement statement) throws SyntaxError {
+    if (statement.getDirective().needsSection() && section.isInvalid())
+      throw new SyntaxError("Not in a Section");
+
+    switch (statement.getDirective()) {
+      case BYTE:
+      case WORD:
+        int size = statement.getDirective() == LineParser.DirectiveType.BYTE ? 1 : 2;
+        for (String operand : statement.getParams()) {
+          int value;
+          if (!Expression.isSymbol(operand)) {
+            Expression expression = Expression.parse(operand);
+            value = expression.isConstant() ? expression.getValue() : resolve(expression, section.getSize(), size, section);
+          } else {
+            if (!isKnown(operand))
+              addFixup(operand, new Fixup(section, section.getSize(), size, null, true, -1, line));
+            value = equTable.resolve(operand, symbolTable);
+          }
+          if (size == 1) section.appendByte(value);
+          else section.appendWord(value);
+        }
+        section.incrementOffset(size * statement.getParams().size());
+        break;
+      case SKIP:
+        section.appendZeros(Math.max(0, statement.getValue()));
+        section.incrementOffset(statement.getValue());
+        break;
+      case ALIGN:
+        if (statement.getValue() <= 0) throw new SyntaxError("Bad Alignment");
+        while (section.getOffset() % statement.getValue() != 0) {
+          section.appendZeros(1);
+          section.incrementOffset();
+        }
+        break;
+      case EQU:
+        symbolTable.add(statement.getSymbol(), section);
+        if (statement.getExpression() == null) {
+          equTable.add(statement.getSymbol(), statement.getValue());
+          resolveFixups(statement.getSymbol());
+        } else {
+          equTable.add(statement.getSymbol(), statement.getExpression(), line);
+          if (evaluateWhenKnown(statement.getSymbol())) resolveFixups(statement.getSymbol());
+        }
+        break;
+      case EXTERN:
+        symbolTable.add(statement.getSymbol(), new SectionLocation(), true);
+        resolveFixups(statement.getSymbol());
+        break;
+      case GLOBAL: globals.add(new ParsedLine(statement, null, 0, 0)); break;
+      case INCLUDE: include(statement.getSymbol(), this::assembleLine); break;
+    }
+  }
+
+  // defined, and if it's a constant, evaluated
+  private boolean isKnown(String symbol) {
+    return symbolTable.find(symbol) != null && !equTable.isPending(symbol);
+  }
+
+  private String firstUnknown(Expression expression) {
+    for (String symbol : expression.getSymbols())
+      if (!isKnown(symbol)) return symbol;
+    return null;
+  }
+
+  // evaluates a pending constant if every symbol it uses is known, otherwise it waits for the first
+  // unknown one, true if it was evaluated
+  private boolean evaluateWhenKnown(String constant) throws SyntaxError {
+    String unknown = firstUnknown(equTable.getExpression(constant));
+    if (unknown != null) {
+      waitingConstants.computeIfAbsent(unknown, s -> new ArrayList<>()).add(constant);
+      return false;
+    }
+    equTable.evaluate(constant, symbolTable);
+    return true;
+  }
+
+  private void addFixup(String symbol, Fixup fixup) {
+    fixups.computeIfAbsent(symbol, s -> new ArrayList<>()).add(fixup);
+  }
+
+  // the symbol just became known, constants waiting for it are evaluated first, which makes them known in turn
+  private void resolveFixups(String symbol) throws SyntaxError {
+    if (!fixups.containsKey(symbol) && !waitingConstants.containsKey(symbol)) return;
+
+    Deque<String> known = new ArrayDeque<>();
+    known.add(symbol);
+    while (!known.isEmpty()) {
+      String next = known.poll();
+      List<String> constants = waitingConstants.remove(next);
+      if (constants != null) {
+        for (String constant : constants) if (evaluateWhenKnown(constant)) known.add(constant);
+      }
+      patchFixups(next);
+    }
+  }
+
+  private void patchFixups(String symbol) throws SyntaxError {
+    List<Fixup> pending = fixups.remove(symbol);
+    if (pending == null) return;
+
+    Symbol s = symbolTable.find(symbol);
+    EquSymbol constant = equTable.find(symbol);
+    for (Fixup fixup : pending) {
+      if (fixup.expression != null) {
+        String unknown = firstUnknown(fixup.expression);
+        if (unknown != null) {
+          addFixup(unknown, fixup);
+          continue;
+        }
+        try {
+          fixup.section.patch(fixup.offset, fixup.expression.evaluate(symbolTable, equTable), fixup.size);
+        } catch (SyntaxError e) {
+          throw e.atLine(fixup.line);
+        }
+      } else if (constant != null && fixup.constantAllowed) {
+        fixup.section.patch(fixup.offset, constant.getValue(), fixup.size);
+      } else if (fixup.relocationType != null) {
+        fixup.section.getRelocationTable().set(fixup.relocationIndex,
+            fixup.offset, fixup.relocationType, s.getSection(), s.getLabel());
+      }
+      // data referring to a label stays 0, as in the two-pass assembler
+    }
+  }
+
+  // data may refer to symbols that are never defined, instructions and expressions may not. Constants
+  // still waiting are evaluated the way the two-pass assembler does, to report why they can't be.
+  private void checkUnresolved() throws SyntaxError {
+    equTable.resolveAll(symbolTable);
+    for (List<Fixup> pending : fixups.values()) {
+      for (Fixup fixup : pending) {
+        if (fixup.relocationType != null || fixup.expression != null) throw new SyntaxError("Symbol not defined").atLine(fixup.line);
+      }
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package com.endava.mmarko;
+
+interface OperandResolver {
+  // returns the value encoded for a symbolic operand at offset in section, symbols that aren't constants,
+  // or any symbol when constants aren't allowed, get a relocation entry of the given type and encode as 0
+  int resolve(String symbol, RelocationType relocationType, boolean constantAllowed,
+              int offset, SectionInfo section) throws SyntaxError;
+
+  // returns the value encoded for an operand expression of size bytes at index in the section's contents
+  int resolve(Expression expression, int index, int size, SectionInfo section) throws SyntaxError;
+}
@@ -0,0 +1,15 @@
+package com.endava.mmarko;
+
+public enum OutputFormat { LISTING(".txt"), OBJECT(".o");
+  private final String extension;
+
+  OutputFormat(String extension) {
+    this.extension = extension;
+  }
+
+  String getExtension() {
+    return extension;
+  }
+
+  @Override public String toString() { return super.toString().toLowerCase(); }
+}
@@ -0,0 +1,32 @@
+package com.endava.mmarko;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+interface OutputWriter extends Closeable {
+  // called before the first section, the tables won't change anymore
+  void start(SymbolTable symbolTable, SectionTable sectionTable) throws IOException;
+
+  // called by the second pass every time a section is closed
+  void writeSection(SectionInfo section) throws IOException;
+
+  void finish() throws IOException;
+
+  static OutputWriter create(String output, OutputFormat format) throws IOException {
+    switch (format) {
+      case OBJECT: return new ObjectFileWriter(output);
+      default: return new ListingWriter(output);
+    }
+  }
+
+  static OutputWriter create(OutputStream output, OutputFormat format) {
+    switch (format) {
+      case OBJECT: return new ObjectFileWriter(Channels.newChannel(output));
+      default: return new ListingWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+  }
+}
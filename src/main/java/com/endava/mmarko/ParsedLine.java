@@ -0,0 +1,76 @@
+package com.endava.mmarko;
+
+import java.util.List;
+
+class ParsedLine {
+  private final CharSequence source;
+  private final LineParser.LineType type;
+  private final LineParser.DirectiveType directive;
+  private final String name;
+  private final List<String> operands;
+  private final InstructionParser instruction;
+  private final int offset;
+  private final int size;
+  private final int[] values; // folded operand values, null if there are none
+
+  ParsedLine(Statement statement, InstructionParser instruction, int offset, int size) {
+    this.source = statement.getSource();
+    this.type = statement.getType();
+    this.directive = statement.getDirective();
+    this.name = type == LineParser.LineType.SECTION ? statement.getSectionName() : statement.getSymbol();
+    this.operands = statement.getParams();
+    this.instruction = instruction;
+    this.offset = offset;
+    this.size = size;
+    this.values = null;
+  }
+
+  // the line with its operand values folded
+  ParsedLine(ParsedLine line, InstructionParser instruction, int[] values) {
+    this.source = line.source;
+    this.type = line.type;
+    this.directive = line.directive;
+    this.name = line.name;
+    this.operands = line.operands;
+    this.instruction = instruction == null ? line.instruction : instruction;
+    this.offset = line.offset;
+    this.size = line.size;
+    this.values = values;
+  }
+
+  CharSequence getSource() {
+    return source;
+  }
+
+  LineParser.LineType getType() {
+    return type;
+  }
+
+  LineParser.DirectiveType getDirective() {
+    return directive;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  List<String> getOperands() {
+    return operands;
+  }
+
+  InstructionParser getInstruction() {
+    return instruction;
+  }
+
+  int getOffset() {
+    return offset;
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  int[] getValues() {
+    return values;
+  }
+}
@@ -0,0 +1,141 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the relocations of one section, in the order they were added. Every field has an array of its own,
+// so a relocation takes 13 bytes instead of an object. Symbol names are kept once per table and
+// referred to by their index in it.
+class RelocationTable {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final byte UNSET = 0; // a reserved slot, no type has code 0
+
+  private int[] offsets = new int[0];
+  private byte[] types = new byte[0];
+  private int[] sections = new int[0];
+  private int[] symbols = new int[0];
+  private int size;
+
+  private final List<String> names = new ArrayList<>();
+  private final Map<String, Integer> nameIndexes = new HashMap<>();
+
+  void add(int offset, RelocationType type, int section, String symbol) {
+    set(reserve(), offset, type, section, symbol);
+  }
+
+  // a slot set later on, slots that are never set are dropped by removeUnset
+  int reserve() {
+    if (size == offsets.length) {
+      int capacity = Math.max(INITIAL_CAPACITY, 2 * size);
+      offsets = Arrays.copyOf(offsets, capacity);
+      types = Arrays.copyOf(types, capacity);
+      sections = Arrays.copyOf(sections, capacity);
+      symbols = Arrays.copyOf(symbols, capacity);
+    }
+    types[size] = UNSET;
+    return size++;
+  }
+
+  void set(int index, int offset, RelocationType type, int section, String symbol) {
+    offsets[index] = offset;
+    types[index] = (byte) type.getCode();
+    sections[index] = section;
+    symbols[index] = nameIndex(symbol);
+  }
+
+  private int nameIndex(String symbol) {
+    Integer index = nameIndexes.get(symbol);
+    if (index == null) {
+      index = names.size();
+      names.add(symbol);
+      nameIndexes.put(symbol, index);
+    }
+    return index;
+  }
+
+  void removeUnset() {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (types[i] == UNSET) continue;
+      offsets[kept] = offsets[i];
+      types[kept] = types[i];
+      sections[kept] = sections[i];
+      symbols[kept] = symbols[i];
+      kept++;
+    }
+    size = kept;
+  }
+
+  void addAll(RelocationTable other) {
+    for (int i = 0; i < other.size; i++)
+      add(other.offsets[i], other.getType(i), other.sections[i], other.getSymbol(i));
+  }
+
+  // a trimmed copy, unset slots included
+  RelocationTable copy() {
+    RelocationTable copy = new RelocationTable();
+    copy.offsets = Arrays.copyOf(offsets, size);
+    copy.types = Arrays.copyOf(types, size);
+    copy.sections = Arrays.copyOf(sections, size);
+    copy.symbols = Arrays.copyOf(symbols, size);
+    copy.size = size;
+    copy.names.addAll(names);
+    copy.nameIndexes.putAll(nameIndexes);
+    return copy;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int getOffset(int index) {
+    return offsets[index];
+  }
+
+  RelocationType getType(int index) {
+    return RelocationType.of(types[index]);
+  }
+
+  int getTypeCode(int index) {
+    return types[index];
+  }
+
+  int getSection(int index) {
+    return sections[index];
+  }
+
+  String getSymbol(int index) {
+    return names.get(symbols[index]);
+  }
+
+  int getSymbolIndex(int index) {
+    return symbols[index];
+  }
+
+  // every symbol name, at its index
+  List<String> getSymbolNames() {
+    return names;
+  }
+
+  // one listing row per relocation: offset, type, section (und for externs) and symbol
+  void print(Writer out) throws IOException {
+    char[] hex = new char[10];
+    for (int i = 0; i < size; i++) {
+      NumberParser.writeHex(offsets[i], 5, hex, 0);
+      out.write("    ");
+      out.write(hex);
+      out.write("\t\t");
+      out.write(getType(i).name());
+      out.write("\t\t");
+      out.write(sections[i] >= 0 ? Integer.toString(sections[i]) : "und");
+      out.write("\t\t");
+      out.write(getSymbol(i));
+      out.write('\n');
+    }
+  }
+}
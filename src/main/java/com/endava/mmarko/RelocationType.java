@@ -0,0 +1,39 @@
+package com.endava.mmarko;
+
+// named as in the listing, size of the relocated field in bytes, the code is the one in object files
+enum RelocationType {
+  R_8(1, 1, false), R_16(2, 2, false), R_PC8(3, 1, true), R_PC16(4, 2, true);
+
+  private static final RelocationType[] BY_CODE = {null, R_8, R_16, R_PC8, R_PC16};
+
+  private final int code;
+  private final int size;
+  private final boolean pcRelative;
+
+  RelocationType(int code, int size, boolean pcRelative) {
+    this.code = code;
+    this.size = size;
+    this.pcRelative = pcRelative;
+  }
+
+  static RelocationType of(int code) {
+    return BY_CODE[code];
+  }
+
+  static RelocationType of(int size, boolean pcRelative) {
+    if (size == 1) return pcRelative ? R_PC8 : R_8;
+    return pcRelative ? R_PC16 : R_16;
+  }
+
+  int getCode() {
+    return code;
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  boolean isPcRelative() {
+    return pcRelative;
+  }
+}
@@ -21,4 +21,16 @@ class Section {
 
     return label + tabsName + id + tabs + flag;
   }
+
+  String getLabel() {
+    return label;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  String getFlag() {
+    return flag;
+  }
 }
@@ -0,0 +1,163 @@
+package com.endava.mmarko;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// encoded sections of earlier assemblies, keyed by a hash of their source lines. A symbolic operand
+// encodes as a constant's value, or as 0 with a relocation naming the symbol and its section, so an
+// entry is reused while every symbol it refers to still has the same value and section. Label
+// offsets only end up in the section contents through folded expressions, whose values are part of
+// the key, so moving code around doesn't invalidate anything else.
+class SectionCache {
+  static final int DEFAULT_CAPACITY = 4096;
+
+  private final Map<ByteBuffer, CachedSection> entries;
+  private long hits;
+  private long misses;
+
+  private static class CachedSection {
+    final byte[] bytes;
+    final RelocationTable relocations;
+    final Dependency[] dependencies;
+
+    CachedSection(SectionInfo info, Dependency[] dependencies) {
+      bytes = Arrays.copyOf(info.getBytes(), info.getSize());
+      relocations = info.getRelocationTable().copy();
+      this.dependencies = dependencies;
+    }
+  }
+
+  // how a symbol resolves, everything an operand naming it can be encoded from
+  private static class Dependency {
+    final String symbol;
+    final boolean constant;
+    final int value;
+    final boolean defined;
+    final int section;
+
+    Dependency(String symbol, SymbolTable symbolTable, EquTable equTable) {
+      this.symbol = symbol;
+      EquSymbol equ = equTable.find(symbol);
+      constant = equ != null;
+      value = constant ? equ.getValue() : 0;
+      Symbol s = symbolTable.find(symbol);
+      defined = s != null;
+      section = defined ? s.getSection() : 0;
+    }
+
+    boolean isValid(SymbolTable symbolTable, EquTable equTable) {
+      Dependency current = new Dependency(symbol, symbolTable, equTable);
+      return constant == current.constant && value == current.value
+          && defined == current.defined && section == current.section;
+    }
+  }
+
+  SectionCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  // least recently used sections are dropped once there are more than capacity
+  SectionCache(int capacity) {
+    entries = new LinkedHashMap<ByteBuffer, CachedSection>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedSection> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  // sha-256 of the section's lines, from its section line on, with their folded values
+  static ByteBuffer hash(List<ParsedLine> lines) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    byte[] buffer = new byte[256];
+    for (ParsedLine line : lines) {
+      CharSequence source = line.getSource();
+      int length = 0;
+      for (int i = 0; i <= source.length(); i++) {
+        if (length + 3 > buffer.length) {
+          digest.update(buffer, 0, length);
+          length = 0;
+        }
+        // ascii as is, other chars as 3 bytes with the high bit set, a new line can't be in a line
+        char c = i < source.length() ? source.charAt(i) : '\n';
+        if (c < 0x80) {
+          buffer[length++] = (byte) c;
+        } else {
+          buffer[length++] = (byte) (0xE0 | c >> 12);
+          buffer[length++] = (byte) (0x80 | (c >> 6) & 0x3F);
+          buffer[length++] = (byte) (0x80 | c & 0x3F);
+        }
+      }
+      digest.update(buffer, 0, length);
+
+      // 0xff can't start a char, so the values can't be mistaken for the next line
+      if (line.getValues() != null) {
+        ByteBuffer values = ByteBuffer.allocate(1 + 4 * line.getValues().length).put((byte) 0xFF);
+        for (int value : line.getValues()) values.putInt(value);
+        digest.update(values.array());
+      }
+    }
+    return ByteBuffer.wrap(digest.digest());
+  }
+
+  // the cached section as it would be encoded now, null if it isn't cached or a symbol it uses changed
+  SectionInfo find(ByteBuffer key, int id, String name, SymbolTable symbolTable, EquTable equTable) {
+    CachedSection entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+    if (entry != null && !isValid(entry, symbolTable, equTable)) entry = null;
+
+    synchronized (this) {
+      if (entry == null) {
+        misses++;
+        return null;
+      }
+      hits++;
+    }
+
+    SectionInfo info = new SectionInfo(id, name);
+    info.appendBytes(entry.bytes, entry.bytes.length);
+    info.getRelocationTable().addAll(entry.relocations);
+    info.incrementOffset(entry.bytes.length);
+    return info;
+  }
+
+  private static boolean isValid(CachedSection entry, SymbolTable symbolTable, EquTable equTable) {
+    for (Dependency dependency : entry.dependencies)
+      if (!dependency.isValid(symbolTable, equTable)) return false;
+    return true;
+  }
+
+  // symbols are the names the section's operands refer to
+  void put(ByteBuffer key, SectionInfo info, Collection<String> symbols, SymbolTable symbolTable, EquTable equTable) {
+    Dependency[] dependencies = new Dependency[symbols.size()];
+    int i = 0;
+    for (String symbol : symbols) dependencies[i++] = new Dependency(symbol, symbolTable, equTable);
+
+    CachedSection entry = new CachedSection(info, dependencies);
+    synchronized (this) {
+      entries.put(key, entry);
+    }
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+}
@@ -1,25 +1,75 @@
 package com.endava.mmarko;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 class SectionInfo extends SectionLocation {
-  private List<RelocationSymbol> relocationTable;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private RelocationTable relocationTable;
   private String name;
-  private StringBuilder bytes;
+  private byte[] bytes;
+  private int size;
+
+  // outside of any section
+  SectionInfo() {
+  }
+
+  SectionInfo(int id, String name) {
+    super(id);
+    init(name);
+  }
 
-  void startNewSection(String name) {
-    super.incrementSection();
+  private void init(String name) {
     this.name = name;
-    relocationTable = new LinkedList<>();
-    bytes = new StringBuilder();
+    relocationTable = new RelocationTable();
+    bytes = new byte[INITIAL_CAPACITY];
+    size = 0;
   }
 
-  void append(String s) {
-    bytes.append(s);
+  void appendByte(int value) {
+    ensureCapacity(1);
+    bytes[size++] = (byte) value;
   }
 
-  List<RelocationSymbol> getRelocationTable() {
+  // little-endian, like every 16-bit value in the section contents
+  void appendWord(int value) {
+    ensureCapacity(2);
+    bytes[size++] = (byte) value;
+    bytes[size++] = (byte) (value >> 8);
+  }
+
+  void appendBytes(byte[] values, int length) {
+    ensureCapacity(length);
+    System.arraycopy(values, 0, bytes, size, length);
+    size += length;
+  }
+
+  void appendZeros(int count) {
+    ensureCapacity(count);
+    size += count; // new capacity is already zeroed
+  }
+
+  // instruction codes are built with the first byte as the most significant one
+  void appendInstruction(long instrCode, int instrSize) {
+    ensureCapacity(instrSize);
+    for (int i = instrSize - 1; i >= 0; i--) {
+      bytes[size++] = (byte) (instrCode >> (8 * i));
+    }
+  }
+
+  // overwrites already appended bytes, size 1 or 2 (little-endian)
+  void patch(int offset, int value, int size) {
+    bytes[offset] = (byte) value;
+    if (size == 2) bytes[offset + 1] = (byte) (value >> 8);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + extra));
+    }
+  }
+
+  RelocationTable getRelocationTable() {
     return relocationTable;
   }
 
@@ -27,7 +77,11 @@ class SectionInfo extends SectionLocation {
     return name;
   }
 
-  String getBytes() {
-    return bytes.toString();
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  int getSize() {
+    return size;
   }
 }
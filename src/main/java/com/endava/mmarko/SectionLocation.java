@@ -5,7 +5,11 @@ class SectionLocation {
   private int offset;
 
   SectionLocation() {
-    this.id = -1;
+    this(-1);
+  }
+
+  SectionLocation(int id) {
+    this.id = id;
     this.offset = 0;
   }
 
@@ -1,5 +1,9 @@
 package com.endava.mmarko;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -14,20 +18,30 @@ class SectionTable {
     sections.add(new Section(label, section, flags));
   }
 
-  @Override
-  public String toString() {
-    StringBuilder ret;
+  List<Section> getSections() {
+    return sections;
+  }
 
-    ret = new StringBuilder(
+  void print(Writer out) throws IOException {
+    out.write(
         "==============================================SECTION TABLE==============================================\n"
         + "   Name              Section                   Flags\n"
         + "---------------------------------------------------------------------------------------------------------\n");
 
     for (Section s : sections)
-      ret.append(s).append("\n");
+      out.append(s.toString()).append("\n");
 
-    ret.append("=========================================================================================================");
+    out.write("=========================================================================================================");
+  }
 
+  @Override
+  public String toString() {
+    StringWriter ret = new StringWriter();
+    try {
+      print(ret);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringWriter doesn't throw
+    }
     return ret.toString();
   }
 }
@@ -0,0 +1,132 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// splits a source into lines straight from its bytes, ascii lines are views into the buffer
+// and only lines with other utf-8 characters are decoded into a String
+class SourceReader {
+  private final ByteBuffer source;
+  private final String name;
+  private int position;
+
+  SourceReader(ByteBuffer source) {
+    this(source, null);
+  }
+
+  SourceReader(ByteBuffer source, String name) {
+    this.source = source;
+    this.name = name;
+    position = source.position();
+  }
+
+  // the mapping stays valid after the channel is closed
+  static SourceReader open(String path) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) throw new IOException("Source too large: " + path);
+      return new SourceReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+    }
+  }
+
+  // reads the whole source, so it's split like a mapped file
+  static SourceReader read(Reader source) throws IOException {
+    StringBuilder text = new StringBuilder();
+    char[] buffer = new char[8192];
+    for (int n; (n = source.read(buffer)) >= 0; ) text.append(buffer, 0, n);
+    return new SourceReader(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  // the path of a source read from a file, null for sources in memory
+  String getName() {
+    return name;
+  }
+
+  // next line without its \n or \r\n terminator, null at the end of the source
+  CharSequence readLine() {
+    int limit = source.limit();
+    if (position >= limit) return null;
+
+    int start = position;
+    int end = start;
+    boolean ascii = true;
+    for (byte b; end < limit && (b = source.get(end)) != '\n'; end++) {
+      if (b < 0) ascii = false;
+    }
+    position = end + 1;
+    if (end > start && source.get(end - 1) == '\r') end--;
+
+    return ascii ? new AsciiLine(source, start, end) : decode(start, end);
+  }
+
+  private String decode(int from, int to) {
+    ByteBuffer line = source.duplicate();
+    line.limit(to).position(from);
+    return StandardCharsets.UTF_8.decode(line).toString();
+  }
+
+  // next non blank line, null once .end or the end of the source is reached
+  CharSequence readSourceLine() {
+    CharSequence line = readLine();
+    while (line != null && isBlank(line)) line = readLine();
+
+    if (line == null || contains(line, ".end")) return null;
+    return line;
+  }
+
+  static boolean isBlank(CharSequence line) {
+    for (int i = 0; i < line.length(); i++)
+      if (!Character.isWhitespace(line.charAt(i))) return false;
+    return true;
+  }
+
+  static boolean contains(CharSequence line, String str) {
+    for (int i = 0; i + str.length() <= line.length(); i++) {
+      int j = 0;
+      while (j < str.length() && line.charAt(i + j) == str.charAt(j)) j++;
+      if (j == str.length()) return true;
+    }
+    return false;
+  }
+
+  // one char per byte, the bytes are only copied by toString
+  private static final class AsciiLine implements CharSequence {
+    private final ByteBuffer source;
+    private final int from;
+    private final int to;
+
+    AsciiLine(ByteBuffer source, int from, int to) {
+      this.source = source;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public int length() {
+      return to - from;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length()) throw new IndexOutOfBoundsException(index);
+      return (char) source.get(from + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      if (start < 0 || start > end || end > length()) throw new IndexOutOfBoundsException(start);
+      return new AsciiLine(source, from + start, from + end);
+    }
+
+    @Override
+    public String toString() {
+      byte[] bytes = new byte[length()];
+      for (int i = 0; i < bytes.length; i++) bytes[i] = source.get(from + i);
+      return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package com.endava.mmarko;
+
+import java.util.List;
+
+// what one source line says, either parsed from the line just now or cached with an included file
+interface Statement {
+  CharSequence getSource();
+
+  String getLabel();
+
+  LineParser.LineType getType();
+
+  String getSectionName();
+
+  String getSectionFlags();
+
+  LineParser.DirectiveType getDirective();
+
+  List<String> getParams();
+
+  int getValue();
+
+  // the value of an EQU that isn't a plain number, null otherwise
+  Expression getExpression();
+
+  String getSymbol();
+
+  // the instruction of an INSTRUCTION statement
+  InstructionParser getInstructionParser() throws SyntaxError;
+}
@@ -43,6 +43,14 @@ class Symbol {
     return section;
   }
 
+  int getOffset() {
+    return offset;
+  }
+
+  boolean isGlobal() {
+    return global;
+  }
+
   void setGlobal() {
     this.global = true;
   }
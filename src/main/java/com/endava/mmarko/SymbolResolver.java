@@ -0,0 +1,33 @@
+package com.endava.mmarko;
+
+// resolves operands once every symbol is known, as in the second pass
+class SymbolResolver implements OperandResolver {
+  private final SymbolTable symbolTable;
+  private final EquTable equTable;
+
+  SymbolResolver(SymbolTable symbolTable, EquTable equTable) {
+    this.symbolTable = symbolTable;
+    this.equTable = equTable;
+  }
+
+  @Override
+  public int resolve(String symbol, RelocationType relocationType, boolean constantAllowed,
+                     int offset, SectionInfo section) throws SyntaxError {
+    if (constantAllowed) {
+      EquSymbol constant = equTable.find(symbol);
+      if (constant != null) return constant.getValue();
+    }
+
+    Symbol s;
+    if ((s = symbolTable.find(symbol)) == null)
+      throw new SyntaxError("Symbol not defined");
+    section.getRelocationTable().add(offset, relocationType, s.getSection(), s.getLabel());
+    return 0;
+  }
+
+  // every symbol is known, so the expression can be evaluated right away
+  @Override
+  public int resolve(Expression expression, int index, int size, SectionInfo section) throws SyntaxError {
+    return expression.evaluate(symbolTable, equTable);
+  }
+}
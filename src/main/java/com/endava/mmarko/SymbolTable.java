@@ -1,51 +1,62 @@
 package com.endava.mmarko;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 class SymbolTable {
-  private final List<Symbol> symbols;
+  // insertion ordered, so the listing keeps the order in which symbols were defined
+  private final Map<String, Symbol> symbols;
 
   SymbolTable() {
-    symbols = new LinkedList<>();
+    symbols = new LinkedHashMap<>();
   }
 
-  void add(String label, SectionLocation location) {
+  void add(String label, SectionLocation location) throws SyntaxError {
     add(label, location, false);
   }
 
-  void add(String label, SectionLocation location, boolean global) {
-    symbols.add(new Symbol(label, location, global));
+  void add(String label, SectionLocation location, boolean global) throws SyntaxError {
+    if (symbols.putIfAbsent(label, new Symbol(label, location, global)) != null)
+      throw new SyntaxError("Symbol already defined: " + label);
   }
 
   void setGlobal(String symbol) throws SyntaxError {
-    for (Symbol s : symbols) {
-      if (s.getLabel().equals(symbol)) {
-        s.setGlobal();
-        return;
-      }
-    }
-    throw new SyntaxError("Symbol not defined");
+    Symbol s = symbols.get(symbol);
+    if (s == null) throw new SyntaxError("Symbol not defined");
+    s.setGlobal();
   }
 
   Symbol find(String label) {
-    for (Symbol s : symbols) {
-      if (s.getLabel().equals(label)) return s;
-    }
-    return null;
+    return symbols.get(label);
   }
 
-  @Override
-  public String toString() {
-    StringBuilder ret;
+  // in definition order
+  Collection<Symbol> getSymbols() {
+    return symbols.values();
+  }
 
-    ret = new StringBuilder("==============================================SYMBOL TABLE===============================================\n"
+  void print(Writer out) throws IOException {
+    out.write("==============================================SYMBOL TABLE===============================================\n"
         + "      Name            Section                     Offset                         G/L\n"
         + "---------------------------------------------------------------------------------------------------------\n");
-    for (Symbol s : symbols)
-      ret.append(s).append("\n");
-    ret.append("=========================================================================================================\n");
+    for (Symbol s : symbols.values())
+      out.append(s.toString()).append("\n");
+    out.write("=========================================================================================================\n");
+  }
 
+  @Override
+  public String toString() {
+    StringWriter ret = new StringWriter();
+    try {
+      print(ret);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringWriter doesn't throw
+    }
     return ret.toString();
   }
 
@@ -1,7 +1,28 @@
 package com.endava.mmarko;
 
 class SyntaxError extends Exception {
+  private final String line;
+
   SyntaxError(String message) {
+    this(message, null);
+  }
+
+  private SyntaxError(String message, String line) {
     super(message);
+    this.line = line;
+  }
+
+  // the same error, reported for the given source line, errors in included files keep their own line
+  SyntaxError atLine(CharSequence line) {
+    if (this.line != null) return this;
+    return new SyntaxError(getMessage(), line.toString());
+  }
+
+  String getLine() {
+    return line;
+  }
+
+  String report() {
+    return "SYNTAX ERROR in line: " + line + "\n\n" + getMessage() + "\n";
   }
 }
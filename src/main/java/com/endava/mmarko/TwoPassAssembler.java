@@ -0,0 +1,16 @@
+package com.endava.mmarko;
+
+import java.io.IOException;
+import java.util.List;
+
+interface TwoPassAssembler extends Assembler {
+  @Override
+  default void assemble() throws IOException, SyntaxError {
+      List<ParsedLine> firstPassOutput = firstPass();
+      secondPass(firstPassOutput);
+  }
+
+  List<ParsedLine> firstPass() throws IOException, SyntaxError;
+
+  void secondPass(List<ParsedLine> firstPassOutput) throws IOException, SyntaxError;
+}
@@ -0,0 +1,83 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssemblerEventsTest {
+  private static final String SOURCE = String.join("\n",
+      ".text",
+      "start: mov r1, &start",
+      "  jmp $start",
+      ".data",
+      "  .word 1, 2",
+      ".end");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recordsPassesSectionsAndLines() throws Exception {
+    List<RecordedEvent> events = record(false);
+    assertEquals(1, count(events, "Assembly"));
+    assertEquals("[first, second]", values(events, "Pass", "pass"));
+    // sections are encoded in parallel, in any order
+    assertEquals("[data, text]", events.stream().filter(e -> name(e).equals("Section"))
+        .map(e -> e.getString("section")).sorted().collect(Collectors.toList()).toString());
+    // with no threshold every line is slow
+    assertEquals("[parse, parse, parse, parse, parse, encode, encode, encode]", values(events, "SlowLine", "phase"));
+    assertEquals("[  jmp $start]", events.stream()
+        .filter(e -> name(e).equals("SlowLine") && e.getString("phase").equals("encode") && e.getInt("offset") == 5)
+        .map(e -> e.getString("line")).collect(Collectors.toList()).toString());
+  }
+
+  @Test
+  public void recordsTheOnePassAssembler() throws Exception {
+    List<RecordedEvent> events = record(true);
+    assertEquals(1, count(events, "Assembly"));
+    assertEquals("[one]", values(events, "Pass", "pass"));
+    assertEquals(0, count(events, "Section"));
+    assertEquals(5, count(events, "SlowLine"));
+  }
+
+  private List<RecordedEvent> record(boolean onePass) throws Exception {
+    File file = folder.newFile("events.jfr");
+    try (Recording recording = new Recording()) {
+      for (String event : new String[] {"Assembly", "Pass", "Section", "SlowLine"})
+        recording.enable("com.endava.mmarko." + event).withThreshold(Duration.ZERO);
+      recording.start();
+      assertTrue(new EmbeddedAssembler(OutputFormat.OBJECT, onePass).assemble(new StringReader(SOURCE))
+          .isSuccessful());
+      recording.stop();
+      recording.dump(file.toPath());
+    }
+    // the file groups events by thread and type
+    return RecordingFile.readAllEvents(file.toPath()).stream()
+        .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+        .collect(Collectors.toList());
+  }
+
+  private static String name(RecordedEvent event) {
+    return event.getEventType().getName().substring("com.endava.mmarko.".length());
+  }
+
+  private static long count(List<RecordedEvent> events, String name) {
+    return events.stream().filter(e -> name(e).equals(name)).count();
+  }
+
+  private static String values(List<RecordedEvent> events, String name, String field) {
+    return events.stream().filter(e -> name(e).equals(name)).map(e -> e.getString(field))
+        .collect(Collectors.toList()).toString();
+  }
+}
@@ -0,0 +1,79 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class AssemblerImplTest {
+  private static final int SECTIONS = 40;
+
+  @Test
+  public void parallelListingMatchesSequential() throws IOException, SyntaxError {
+    assertSameOutput(OutputFormat.LISTING);
+  }
+
+  @Test
+  public void parallelObjectFileMatchesSequential() throws IOException, SyntaxError {
+    assertSameOutput(OutputFormat.OBJECT);
+  }
+
+  @Test
+  public void reportsFirstErrorInSourceOrder() throws IOException {
+    List<String> lines = manySections();
+    lines.add(".section late, \"a\"");
+    lines.add("  mov r1, missing_late");
+    lines.add(5, "  mov r1, missing_early");
+    try {
+      TestSources.assemble(parallel(OutputFormat.LISTING), lines.toArray(new String[0]));
+      fail();
+    } catch (SyntaxError e) {
+      assertEquals("  mov r1, missing_early", e.getLine());
+    }
+  }
+
+  // the original encoder left a *addr operand after a symbolic one as 00 00
+  @Test
+  public void encodesMemoryOperandAfterSymbolicOperand() throws IOException, SyntaxError {
+    for (boolean onePass : new boolean[] {false, true}) {
+      String listing = new String(TestSources.assemble(AssemblerFactory.of(OutputFormat.LISTING, onePass),
+          ".text", "l: mov $l, *0xe9f9"));
+      assertTrue(listing, listing.contains("\n24 80 00 00 a0 f9 e9 \n"));
+    }
+  }
+
+  private static void assertSameOutput(OutputFormat format) throws IOException, SyntaxError {
+    String[] lines = new ProgramGenerator().lines(20_000).sections(SECTIONS).generate().split("\n");
+    byte[] sequential = TestSources.assemble(
+        (input, output) -> new AssemblerImpl(input, output, format, 1), lines);
+    byte[] parallel = TestSources.assemble(parallel(format), lines);
+    assertArrayEquals(sequential, parallel);
+  }
+
+  private static AssemblerFactory parallel(OutputFormat format) {
+    return (input, output) -> new AssemblerImpl(input, output, format, 4);
+  }
+
+  // every section refers to its own labels, the previous section and a constant
+  private static List<String> manySections() {
+    List<String> lines = new ArrayList<>();
+    lines.add(".global start0");
+    lines.add(".equ BASE, 0x40");
+    for (int i = 0; i < SECTIONS; i++) {
+      lines.add(i % 2 == 0 ? ".text" : ".data");
+      lines.add("start" + i + ": movw r1, &start" + Math.max(0, i - 1));
+      lines.add("  add r2, &BASE");
+      lines.add("  mov r3, r4[" + i + "]");
+      lines.add("  jmp $start" + i);
+      lines.add("  .word start" + i + ", " + i);
+      lines.add("  .byte BASE, -" + i);
+      lines.add("  .align 4");
+    }
+    return lines;
+  }
+}
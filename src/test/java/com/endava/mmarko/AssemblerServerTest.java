@@ -0,0 +1,119 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssemblerServerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private AssemblerServer server;
+  private Thread serverThread;
+  private Path tokens;
+
+  @Before
+  public void startServer() throws IOException {
+    tokens = folder.getRoot().toPath().resolve("tokens");
+    server = new AssemblerServer(0, 2, tokens);
+    serverThread = new Thread(() -> {
+      try {
+        server.serve();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    serverThread.start();
+  }
+
+  @After
+  public void stopServer() throws IOException, InterruptedException {
+    server.close();
+    serverThread.join(5000);
+  }
+
+  @Test
+  public void assemblesLikeTheLocalBatch() throws IOException, SyntaxError {
+    String[] program = { ".text", "main: movw r1, &main", "  halt" };
+    File good = source("good.s", program);
+    File bad = source("bad.s", ".text", "  jmp nowhere");
+    File goodOutput = new File(folder.getRoot(), "good.o");
+
+    List<BatchAssembler.Result> results = client().assemble(Arrays.asList(
+        new BatchAssembler.Job(good.getPath(), goodOutput.getPath()),
+        new BatchAssembler.Job(bad.getPath(), new File(folder.getRoot(), "bad.o").getPath())),
+        OutputFormat.OBJECT, false);
+
+    assertEquals(BatchAssembler.OK, results.get(0).status);
+    assertArrayEquals(TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), program),
+        Files.readAllBytes(goodOutput.toPath()));
+
+    assertEquals(BatchAssembler.SYNTAX_ERROR, results.get(1).status);
+    assertTrue(results.get(1).message.contains("Symbol not defined\n"));
+  }
+
+  @Test
+  public void stopsOnShutdown() throws IOException, InterruptedException {
+    client().shutdown();
+    serverThread.join(5000);
+    assertFalse(serverThread.isAlive());
+  }
+
+  @Test
+  public void dropsClientsWithoutTheToken() throws IOException, InterruptedException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+         Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      out.write("not the token\n" + AssemblerServer.SHUTDOWN + "\n");
+      out.flush();
+      assertEquals(-1, socket.getInputStream().read());
+    }
+    serverThread.join(200);
+    assertTrue(serverThread.isAlive());
+  }
+
+  @Test
+  public void keepsTheTokenPrivate() throws IOException {
+    Path token = AssemblerServer.tokenFile(tokens, server.getPort());
+    assertTrue(Files.exists(token));
+    if (token.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(token)));
+      assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokens)));
+    }
+
+    server.close();
+    assertFalse(Files.exists(token));
+  }
+
+  private AssemblerClient client() {
+    return new AssemblerClient(server.getPort(), tokens);
+  }
+
+  private File source(String name, String... lines) throws IOException {
+    File file = folder.newFile(name);
+    try (PrintWriter writer = new PrintWriter(file)) {
+      for (String line : lines) writer.println(line);
+      writer.println(".end");
+    }
+    return file;
+  }
+}
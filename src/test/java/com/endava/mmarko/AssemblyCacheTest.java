@@ -0,0 +1,151 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssemblyCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicInteger assemblies = new AtomicInteger();
+
+  @Test
+  public void assemblesOnlyChangedSources() throws IOException, SyntaxError {
+    AssemblyCache cache = new AssemblyCache(folder.newFolder("cache").getPath());
+    AssemblerFactory factory = cache.wrap(counting(OutputFormat.OBJECT), OutputFormat.OBJECT);
+
+    byte[] first = assemble(factory, ".text", "  movw r1, 5", "  halt");
+    byte[] again = assemble(factory, ".text", "  movw r1, 5", "  halt");
+    assertEquals(1, assemblies.get());
+    assertArrayEquals(first, again);
+
+    byte[] changed = assemble(factory, ".text", "  movw r1, 6", "  halt");
+    assertEquals(2, assemblies.get());
+    assertFalse(Arrays.equals(first, changed));
+
+    // the same source in another format is another entry
+    assemble(cache.wrap(counting(OutputFormat.LISTING), OutputFormat.LISTING), ".text", "  movw r1, 5", "  halt");
+    assertEquals(3, assemblies.get());
+  }
+
+  @Test
+  public void assemblesAgainWhenAnIncludedFileChanges() throws IOException, SyntaxError {
+    AssemblyCache cache = new AssemblyCache(folder.newFolder("cache").getPath());
+    AssemblerFactory factory = cache.wrap(counting(OutputFormat.OBJECT), OutputFormat.OBJECT);
+    File header = folder.newFile("h.inc");
+    File source = folder.newFile("m.s");
+    File output = new File(folder.getRoot(), "m.o");
+    Files.write(header.toPath(), Arrays.asList(".equ K, 1"));
+    Files.write(source.toPath(), Arrays.asList(".include \"h.inc\"", ".text", "  push &K", ".end"));
+
+    byte[] first = assemble(factory, source, output);
+    assertArrayEquals(first, assemble(factory, source, output));
+    assertEquals(1, assemblies.get());
+
+    Files.write(header.toPath(), Arrays.asList(".equ K, 0x77"));
+    byte[] changed = assemble(factory, source, output);
+    assertEquals(2, assemblies.get());
+    assertFalse(Arrays.equals(first, changed));
+    assertArrayEquals(changed, assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), source, output));
+
+    // a missing include is a miss as well, and then an error
+    Files.delete(header.toPath());
+    try {
+      assemble(factory, source, output);
+      fail();
+    } catch (SyntaxError e) {
+      assertEquals(3, assemblies.get());
+    }
+  }
+
+  @Test
+  public void keepsSourcesInOtherDirectoriesApart() throws IOException, SyntaxError {
+    AssemblyCache cache = new AssemblyCache(folder.newFolder("cache").getPath());
+    AssemblerFactory factory = cache.wrap(counting(OutputFormat.OBJECT), OutputFormat.OBJECT);
+    File[] sources = new File[2];
+    for (int i = 0; i < 2; i++) {
+      File directory = folder.newFolder("c" + i);
+      Files.write(new File(directory, "defs.s").toPath(), Arrays.asList(".equ K, " + (i + 1)));
+      sources[i] = new File(directory, "m.s");
+      Files.write(sources[i].toPath(), Arrays.asList(".include \"defs.s\"", ".data", "  .word K", ".end"));
+    }
+    File output = new File(folder.getRoot(), "m.o");
+
+    byte[] first = assemble(factory, sources[0], output);
+    byte[] second = assemble(factory, sources[1], output);
+    assertEquals(2, assemblies.get());
+    assertArrayEquals(assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), sources[1], output), second);
+    assertFalse(Arrays.equals(first, second));
+  }
+
+  @Test
+  public void replacesDamagedEntries() throws IOException, SyntaxError {
+    File directory = folder.newFolder("cache");
+    AssemblerFactory factory = new AssemblyCache(directory.getPath())
+        .wrap(counting(OutputFormat.OBJECT), OutputFormat.OBJECT);
+    byte[] first = assemble(factory, ".text", "  halt");
+
+    File entry = directory.listFiles()[0];
+    for (String damaged : new String[] { "garbage", "1\nnospace\n", "2\n", "" }) {
+      Files.write(entry.toPath(), damaged.getBytes(StandardCharsets.UTF_8));
+      assertArrayEquals(first, assemble(factory, ".text", "  halt"));
+    }
+    assertEquals(5, assemblies.get());
+    assertArrayEquals(first, assemble(factory, ".text", "  halt"));
+    assertEquals(5, assemblies.get());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws IOException, SyntaxError {
+    File directory = folder.newFolder("small");
+    // room for one listing only
+    AssemblyCache cache = new AssemblyCache(directory.getPath(), 2000);
+    AssemblerFactory factory = cache.wrap(counting(OutputFormat.LISTING), OutputFormat.LISTING);
+
+    assemble(factory, ".text", "  halt");
+    // older than anything written next, whatever the file system's timestamp resolution
+    for (File entry : directory.listFiles())
+      Files.setLastModifiedTime(entry.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+    assemble(factory, ".text", "  ret");
+    String[] entries = directory.list();
+    assertEquals(1, entries.length);
+    assertTrue(entries[0].endsWith(".txt"));
+
+    assemble(factory, ".text", "  ret");
+    assertEquals(2, assemblies.get());
+  }
+
+  private AssemblerFactory counting(OutputFormat format) {
+    AssemblerFactory factory = AssemblerFactory.of(format, false);
+    return (input, output) -> {
+      assemblies.incrementAndGet();
+      return factory.create(input, output);
+    };
+  }
+
+  private static byte[] assemble(AssemblerFactory factory, File source, File output)
+      throws IOException, SyntaxError {
+    try (Assembler as = factory.create(source.getPath(), output.getPath())) {
+      as.assemble();
+    }
+    return Files.readAllBytes(output.toPath());
+  }
+
+  private static byte[] assemble(AssemblerFactory factory, String... lines) throws IOException, SyntaxError {
+    return TestSources.assemble(factory, lines);
+  }
+}
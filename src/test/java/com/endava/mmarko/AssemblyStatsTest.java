@@ -0,0 +1,43 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import org.junit.Test;
+
+public class AssemblyStatsTest {
+  private static final String SOURCE = String.join("\n",
+      ".equ K, 3",
+      ".extern ext",
+      ".text",
+      "start: mov r1, &start",
+      "  add r2, r3[4]",
+      "  jmp $start",
+      "  call ext",
+      ".data",
+      "  .word start, K",
+      ".end");
+
+  @Test
+  public void countsWhatBothAssemblersProduce() throws Exception {
+    for (boolean onePass : new boolean[] {false, true}) {
+      AssemblyStats stats = new AssemblyStats();
+      assertTrue(new EmbeddedAssembler(OutputFormat.OBJECT, onePass).assemble(new StringReader(SOURCE), stats)
+          .isSuccessful());
+
+      assertEquals(9, stats.getLines());
+      assertEquals(3, stats.getSymbols());
+      assertEquals(1, stats.getEquConstants());
+      assertEquals(2, stats.getSections());
+      assertEquals(3, stats.getRelocations());
+      assertEquals(22, stats.getBytes());
+      assertEquals("{mov=1, add=1, jmp=1, call=1}", stats.getMnemonics().toString());
+      assertEquals("{imm=1, reg=2, regind16=2, mem=1}", stats.getAddressingModes().toString());
+      assertTrue(stats.getWallNanos(AssemblyStats.Phase.FIRST_PASS) > 0);
+      assertTrue(stats.toJson().startsWith("{\"phases\":{\"read\":{\"wallNanos\":"));
+      assertTrue(stats.toJson().endsWith("\"mnemonics\":{\"mov\":1,\"add\":1,\"jmp\":1,\"call\":1},"
+          + "\"addressingModes\":{\"imm\":1,\"reg\":2,\"regind16\":2,\"mem\":1}}"));
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class BatchAssemblerTest {
+
+  @Test
+  public void reportsAStatusPerFile() throws IOException, InterruptedException, SyntaxError {
+    String[] valid = { ".text", "start: jmp start" };
+    List<File> files = new ArrayList<>();
+    try {
+      List<BatchAssembler.Job> jobs = new ArrayList<>();
+      for (int i = 0; i < 8; i++) jobs.add(job(files, valid));
+      jobs.add(job(files, ".text", "start: foo r1"));
+      jobs.add(new BatchAssembler.Job("missing.s", "missing.txt"));
+
+      List<BatchAssembler.Result> results =
+          new BatchAssembler(AssemblerFactory.of(OutputFormat.LISTING, false), 4).run(jobs);
+
+      byte[] expected = TestSources.assemble(AssemblerFactory.of(OutputFormat.LISTING, false), valid);
+      for (int i = 0; i < 8; i++) {
+        assertEquals(BatchAssembler.OK, results.get(i).status);
+        assertArrayEquals(expected, Files.readAllBytes(new File(jobs.get(i).output).toPath()));
+      }
+      assertEquals(BatchAssembler.SYNTAX_ERROR, results.get(8).status);
+      assertTrue(results.get(8).message.contains("Unknown Instruction: foo"));
+      assertEquals(BatchAssembler.BAD_FILES, results.get(9).status);
+      assertEquals(BatchAssembler.SYNTAX_ERROR, BatchAssembler.exitStatus(results));
+    } finally {
+      for (File file : files) file.delete();
+    }
+  }
+
+  @Test
+  public void replacesTheInputExtension() {
+    assertEquals("dir.v2/main.o", BatchAssembler.defaultOutput("dir.v2/main.s", OutputFormat.OBJECT));
+    assertEquals("dir.v2/main.txt", BatchAssembler.defaultOutput("dir.v2/main", OutputFormat.LISTING));
+  }
+
+  private static BatchAssembler.Job job(List<File> files, String... lines) throws IOException {
+    File input = File.createTempFile("batch", ".s");
+    File output = File.createTempFile("batch", ".txt");
+    files.add(input);
+    files.add(output);
+    List<String> source = new ArrayList<>(List.of(lines));
+    source.add(".end");
+    Files.write(input.toPath(), source);
+    return new BatchAssembler.Job(input.getPath(), output.getPath());
+  }
+}
@@ -0,0 +1,59 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class EmbeddedAssemblerTest {
+  private static final String[] PROGRAM = {
+      ".global main",
+      ".text",
+      "main: movw r1, &data",
+      "      call $main",
+      "      halt",
+      ".data",
+      "data: .word main, 5",
+  };
+
+  @Test
+  public void matchesFileOutput() throws IOException, SyntaxError {
+    for (OutputFormat format : OutputFormat.values()) {
+      byte[] expected = TestSources.assemble(AssemblerFactory.of(format, false), PROGRAM);
+      EmbeddedAssembler assembler = new EmbeddedAssembler(format);
+
+      AssemblyResult fromReader = assembler.assemble(new StringReader(source(PROGRAM)));
+      assertTrue(fromReader.isSuccessful());
+      assertArrayEquals(expected, fromReader.getOutput());
+
+      ByteBuffer buffer = ByteBuffer.wrap(source(PROGRAM).getBytes(StandardCharsets.UTF_8));
+      assertArrayEquals(expected, assembler.assemble(buffer).getOutput());
+      assertEquals(0, buffer.position());
+    }
+  }
+
+  @Test
+  public void reportsErrorsAsDiagnostics() throws IOException {
+    EmbeddedAssembler assembler = new EmbeddedAssembler(OutputFormat.LISTING, true);
+    AssemblyResult result = assembler.assemble(new StringReader(".text\n  mov r1, missing\n"));
+    assertFalse(result.isSuccessful());
+    assertNull(result.getOutput());
+    assertEquals(1, result.getDiagnostics().size());
+    assertEquals("Symbol not defined", result.getDiagnostics().get(0).getMessage());
+    assertEquals("  mov r1, missing", result.getDiagnostics().get(0).getLine());
+
+    // the same instance keeps working after a failure
+    assertTrue(assembler.assemble(new StringReader(source(PROGRAM))).isSuccessful());
+  }
+
+  private static String source(String... lines) {
+    return String.join("\n", lines) + "\n.end\n";
+  }
+}
@@ -0,0 +1,105 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ExpressionTest {
+  private static final String[] EXPRESSIONS = {
+      ".equ TWICE, SIZE * 2 + (1 << 4)",   // refers to a constant defined later
+      ".equ SIZE, end - start",
+      ".equ MASK, ~0xF & 0xFF",
+      ".text",
+      "start: mov r1, &TWICE",
+      "       add r2, (SIZE + 1) * 3",
+      "       mov r3, r4[SIZE - 2]",
+      "       mov r3, *(MASK | 1)",
+      "       addb r1l, &(MASK >> 4)",
+      "       mov r1, -LATER",               // forward reference to a constant
+      "end:",
+      ".data",
+      "       .word SIZE, TWICE - 1, end - start",
+      "       .byte -1, LATER % 7",
+      ".equ LATER, TWICE / 3",
+  };
+
+  private final SymbolTable symbolTable = new SymbolTable();
+  private final EquTable equTable = new EquTable();
+
+  @Test
+  public void foldsNumbersWithCPrecedence() throws SyntaxError {
+    assertEquals(7, Expression.parse("1 + 2 * 3").getValue());
+    assertEquals(9, Expression.parse("(1 + 2) * 3").getValue());
+    assertEquals(0x12, Expression.parse("0x10 | 1 << 1").getValue());
+    assertEquals(8, Expression.parse("-~7").getValue());
+    assertEquals(2, Expression.parse("17 % 5 ^ 0").getValue());
+    assertEquals(-5, Expression.parse("0x-5").getValue());
+    assertTrue(Expression.parse("4 * 4").isConstant());
+  }
+
+  @Test
+  public void evaluatesConstantsAndLabelDifferences() throws SyntaxError {
+    SectionLocation location = new SectionLocation();
+    location.incrementSection();
+    symbolTable.add("start", location);
+    location.incrementOffset(12);
+    symbolTable.add("end", location);
+    equTable.add("K", 3);
+
+    Expression expression = Expression.parse("(end - start) / K + K");
+    assertEquals(Arrays.asList("end", "start", "K"), expression.getSymbols());
+    assertEquals(7, expression.evaluate(symbolTable, equTable));
+    assertEquals(12, Expression.parse("end + 4 - (start + 4)").evaluate(symbolTable, equTable));
+    assertError("end + start", "Not a Constant Expression");
+    assertError("end * 2 - start", "Not a Constant Expression");
+    assertError("K / (K - 3)", "Division by Zero");
+    assertError("K + missing", "Symbol not defined: missing");
+  }
+
+  @Test
+  public void evaluatesConstantsOnceInDependencyOrder() throws SyntaxError {
+    equTable.add("C", Expression.parse("B * 2"), ".equ C, B * 2");
+    equTable.add("B", Expression.parse("A + 1"), ".equ B, A + 1");
+    equTable.add("A", 20);
+    equTable.resolveAll(symbolTable);
+    assertEquals(21, equTable.find("B").getValue());
+    assertEquals(42, equTable.find("C").getValue());
+  }
+
+  @Test
+  public void reportsCircularConstantsAtTheirLine() throws SyntaxError {
+    equTable.add("A", Expression.parse("B + 1"), ".equ A, B + 1");
+    equTable.add("B", Expression.parse("A"), ".equ B, A");
+    try {
+      equTable.resolveAll(symbolTable);
+      fail();
+    } catch (SyntaxError e) {
+      assertEquals("Circular Constant: A", e.getMessage());
+      assertEquals(".equ B, A", e.getLine());
+    }
+  }
+
+  @Test
+  public void bothAssemblersFoldTheSameValues() throws IOException, SyntaxError {
+    byte[] twoPass = TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), EXPRESSIONS);
+    byte[] onePass = TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, true), EXPRESSIONS);
+    assertArrayEquals(twoPass, onePass);
+
+    String listing = new String(TestSources.assemble(AssemblerFactory.of(OutputFormat.LISTING, true), EXPRESSIONS));
+    assertTrue(listing, listing.contains("1d 00 49 00 1d 00 ff 03"));
+  }
+
+  private void assertError(String text, String message) {
+    try {
+      Expression.parse(text).evaluate(symbolTable, equTable);
+      fail(text);
+    } catch (SyntaxError e) {
+      assertEquals(message, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncludeCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void includedFilesAssembleLikeInlinedOnes() throws IOException, SyntaxError {
+    write("nested.inc", ".equ TOP, 0x80");
+    File header = write("regs.inc", ".equ BASE, 0x40", ".include nested.inc", ".extern ext");
+    for (OutputFormat format : OutputFormat.values()) {
+      for (boolean onePass : new boolean[] {false, true}) {
+        AssemblerFactory factory = AssemblerFactory.of(format, onePass);
+        assertArrayEquals(
+            TestSources.assemble(factory, ".equ BASE, 0x40", ".equ TOP, 0x80", ".extern ext",
+                ".text", "  mov r1, &BASE", "  .word TOP, ext", "  call ext"),
+            TestSources.assemble(factory, ".include \"" + header.getPath() + "\"",
+                ".text", "  mov r1, &BASE", "  .word TOP, ext", "  call ext"));
+      }
+    }
+  }
+
+  @Test
+  public void parsesEachFileOnceUntilItChanges() throws IOException, SyntaxError {
+    File header = write("consts.inc", ".equ K, 1");
+    String include = ".include " + header.getPath();
+    long misses = IncludeCache.SHARED.getMisses();
+    long hits = IncludeCache.SHARED.getHits();
+
+    TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), include, ".text", "  push &K");
+    TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, true), include, ".text", "  push &K");
+    assertEquals(misses + 1, IncludeCache.SHARED.getMisses());
+    assertEquals(hits + 1, IncludeCache.SHARED.getHits());
+
+    write("consts.inc", ".equ K, 1000");
+    TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), include, ".text", "  push &K");
+    assertEquals(misses + 2, IncludeCache.SHARED.getMisses());
+  }
+
+  @Test
+  public void reportsErrorsAtTheIncludedLine() throws IOException {
+    File header = write("bad.inc", ".equ K, 1", "  mov2 K, r1");
+    assertError("Bad Include File: missing.inc", ".include missing.inc");
+    assertError("Recursive Include: self.inc", ".include " + write("self.inc", ".include self.inc").getPath());
+    // after an include, errors are in the source's own lines again
+    assertError("Unknown Instruction: mov2", ".include " + write("ok.inc", ".equ K, 1").getPath(),
+        ".text", "  mov2 r1, r2");
+    try {
+      TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), ".text", ".include " + header.getPath());
+      fail();
+    } catch (SyntaxError e) {
+      assertEquals("  mov2 K, r1", e.getLine());
+    }
+  }
+
+  private File write(String name, String... lines) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    Files.write(file.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static void assertError(String message, String... lines) throws IOException {
+    try {
+      TestSources.assemble(AssemblerFactory.of(OutputFormat.OBJECT, false), lines);
+      fail();
+    } catch (SyntaxError e) {
+      assertEquals(message, e.getMessage());
+    }
+  }
+}
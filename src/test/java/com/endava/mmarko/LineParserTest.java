@@ -0,0 +1,61 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LineParserTest {
+  private final LineParser parser = new LineParser();
+
+  @Test
+  public void parsesLabelAndInstruction() throws SyntaxError {
+    parser.parse("  loop:  movw r1, r2[4] ; comment");
+    assertEquals("loop", parser.getLabel());
+    assertEquals(LineParser.LineType.INSTRUCTION, parser.getType());
+    assertEquals(5, new InstructionParser(parser.getInstruction()).getInstrSize());
+  }
+
+  @Test
+  public void parsesDirectives() throws SyntaxError {
+    parser.parse("table: .word  1, LATE ,0x10");
+    assertEquals(LineParser.DirectiveType.WORD, parser.getDirective());
+    assertEquals(Arrays.asList("1", "LATE", "0x10"), parser.getParams());
+
+    parser.parse(".equ SIZE, -32");
+    assertEquals("", parser.getLabel());
+    assertEquals("SIZE", parser.getSymbol());
+    assertEquals(-32, parser.getValue());
+
+    parser.parse(".section consts, \"a\"");
+    assertEquals(LineParser.LineType.SECTION, parser.getType());
+    assertEquals("consts", parser.getSectionName());
+    assertEquals("\"a\"", parser.getSectionFlags());
+
+    parser.parse(".include \"../headers/regs.inc\"");
+    assertEquals(LineParser.DirectiveType.INCLUDE, parser.getDirective());
+    assertEquals("../headers/regs.inc", parser.getSymbol());
+  }
+
+  @Test
+  public void parsesLabelOnlyLine() throws SyntaxError {
+    parser.parse("end:   ");
+    assertEquals("end", parser.getLabel());
+    assertEquals(LineParser.LineType.EMPTY, parser.getType());
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void rejectsEmptyParameter() throws SyntaxError {
+    parser.parse(".byte 1,, 2");
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void rejectsBadNumber() throws SyntaxError {
+    parser.parse(".skip 12z");
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void rejectsLabelWithSpaces() throws SyntaxError {
+    parser.parse("my label: halt");
+  }
+}
@@ -0,0 +1,40 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MnemonicTest {
+  @Test
+  public void findsEveryMnemonic() {
+    for (Mnemonic mnemonic : Mnemonic.values()) assertEquals(mnemonic, find(mnemonic.toString()));
+  }
+
+  @Test
+  public void rejectsOtherNames() {
+    assertNull(find("mv"));
+    assertNull(find("movv"));
+    assertNull(find("j"));
+    assertNull(find("jlt"));
+    assertNull(find("HALT"));
+  }
+
+  @Test
+  public void onlyPushAndIntTakeImmediateDestination() {
+    for (Mnemonic mnemonic : Mnemonic.values()) {
+      boolean immediate = mnemonic == Mnemonic.PUSH || mnemonic == Mnemonic.INT;
+      assertEquals(immediate, mnemonic.allowsDestination(Mnemonic.IMM));
+      assertTrue(mnemonic.allowsDestination(Mnemonic.MEM));
+    }
+    assertFalse(Mnemonic.POP.allowsDestination(Mnemonic.IMM));
+  }
+
+  private static Mnemonic find(String name) {
+    LineCursor cursor = new LineCursor();
+    cursor.reset(name);
+    return Mnemonic.find(cursor, 0, name.length());
+  }
+}
@@ -0,0 +1,72 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class NumberParserTest {
+  private static final int CALLS = 1_000_000;
+
+  @Test
+  public void parsesEveryLiteralFormatInPlace() {
+    String line = "mov r1, 0x1F;0b101,017,-42,+7";
+    assertEquals(0x1F, NumberParser.parseInt(line, 8, 12));
+    assertEquals(5, NumberParser.parseInt(line, 13, 18));
+    assertEquals(15, NumberParser.parseInt(line, 19, 22));
+    assertEquals(-42, NumberParser.parseInt(line, 23, 26));
+    assertEquals(7, NumberParser.parseInt(line, 27, 29));
+    assertEquals(Integer.MIN_VALUE, NumberParser.parseInt("-2147483648"));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void rejectsOverflow() {
+    NumberParser.parseInt("2147483648");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void rejectsBadDigits() {
+    NumberParser.parseInt("0x1G");
+  }
+
+  @Test
+  public void writesHexAndListingFormat() {
+    assertEquals("00000000ff", NumberParser.toHex(255, 5));
+    assertEquals("fffe", NumberParser.toHex(-2, 2));
+
+    byte[] bytes = new byte[36];
+    bytes[0] = (byte) 0xAB;
+    String formatted = NumberParser.format(bytes, bytes.length);
+    assertTrue(formatted.startsWith("ab 00 "));
+    assertEquals('\n', formatted.charAt(3 * 35 - 1));
+    assertEquals("00 ", formatted.substring(3 * 35));
+  }
+
+  @Test
+  public void fastPathsDoNotAllocate() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    String literal = "0x7fff";
+    byte[] bytes = new byte[64];
+    char[] buffer = new char[3 * bytes.length];
+
+    long checksum = runFastPaths(literal, bytes, buffer); // let the JIT compile them
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    checksum += runFastPaths(literal, bytes, buffer);
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+    assertTrue(checksum != 0);
+    assertTrue(allocated + " bytes allocated for " + CALLS + " calls", allocated < 1024);
+  }
+
+  private static long runFastPaths(String literal, byte[] bytes, char[] buffer) {
+    long checksum = 0;
+    for (int i = 0; i < CALLS; i++) {
+      checksum += NumberParser.parseInt(literal, 0, literal.length());
+      checksum += NumberParser.writeHex(i, 5, buffer, 0);
+      checksum += NumberParser.format(bytes, 0, bytes.length, buffer, 0);
+    }
+    return checksum;
+  }
+}
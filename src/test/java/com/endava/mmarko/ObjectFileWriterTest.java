@@ -0,0 +1,96 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ObjectFileWriterTest {
+
+  @Test
+  public void writesSectionsSymbolsAndRelocations() throws IOException, SyntaxError {
+    ByteBuffer object = assemble(
+        ".extern ext",
+        ".global start",
+        ".text",
+        "start: call ext",
+        "       halt",
+        ".data",
+        "value: .word 0x1234");
+
+    byte[] magic = new byte[4];
+    object.get(magic);
+    assertArrayEquals(ObjectFileWriter.MAGIC, magic);
+    assertEquals(ObjectFileWriter.VERSION, object.getInt());
+    int sectionCount = object.getInt();
+    int symbolCount = object.getInt();
+    int relocationCount = object.getInt();
+    int sectionHeadersOffset = object.getInt();
+    int symbolTableOffset = object.getInt();
+    int stringTableOffset = object.getInt();
+    assertEquals(2, sectionCount);
+    assertEquals(3, symbolCount);
+    assertEquals(1, relocationCount);
+
+    // .text: name, flags, contents offset, size, relocations offset, relocation count
+    object.position(sectionHeadersOffset);
+    assertEquals("text", string(object, stringTableOffset + object.getInt()));
+    assertEquals(ObjectFileWriter.FLAG_READ | ObjectFileWriter.FLAG_EXECUTE, object.getInt());
+    int textOffset = object.getInt();
+    assertEquals(5, object.getInt());
+    int relocationsOffset = object.getInt();
+    assertEquals(1, object.getInt());
+    assertArrayEquals(new byte[] { (byte) 0xbc, (byte) 0xa0, 0, 0, 0x0c },
+        Arrays.copyOfRange(object.array(), textOffset, textOffset + 5));
+
+    // .data contents are little-endian
+    object.position(sectionHeadersOffset + ObjectFileWriter.SECTION_HEADER_SIZE + 8);
+    int dataOffset = object.getInt();
+    assertEquals(0x34, object.get(dataOffset));
+    assertEquals(0x12, object.get(dataOffset + 1));
+
+    // call ext: the operand after the opcode and addressing bytes refers to symbol 0
+    object.position(relocationsOffset);
+    assertEquals(2, object.getInt());
+    assertEquals(2, object.getInt());
+    assertEquals(0, object.getInt());
+
+    object.position(symbolTableOffset);
+    assertEquals("ext", string(object, stringTableOffset + object.getInt()));
+    assertEquals(-1, object.getInt());
+    assertEquals(0, object.getInt());
+    assertEquals(ObjectFileWriter.BINDING_GLOBAL, object.getInt());
+  }
+
+  private static ByteBuffer assemble(String... lines) throws IOException, SyntaxError {
+    File input = File.createTempFile("object", ".s");
+    File output = File.createTempFile("object", ".o");
+    try {
+      try (PrintWriter writer = new PrintWriter(input)) {
+        for (String line : lines) writer.println(line);
+        writer.println(".end");
+      }
+      try (Assembler as = new AssemblerImpl(input.getPath(), output.getPath(), OutputFormat.OBJECT)) {
+        as.assemble();
+      }
+      return ByteBuffer.wrap(Files.readAllBytes(output.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    } finally {
+      input.delete();
+      output.delete();
+    }
+  }
+
+  private static String string(ByteBuffer object, int offset) {
+    int end = offset;
+    while (object.get(end) != 0) end++;
+    return new String(object.array(), offset, end - offset, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,47 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class OnePassAssemblerTest {
+  private static final String[] FORWARD_REFERENCES = {
+      ".global main",
+      ".global counter",
+      ".text",
+      "main:  movw r1, &table",      // immediate label, defined later
+      "       mov r2, LATE",         // memory operand to a constant, still relocated
+      "       add r2, &LATE",        // immediate constant, patched once defined
+      "       addb r3l, &SMALL",     // 8-bit constant
+      "       mov r4, r5[OFFSET]",
+      "       jmp $done",
+      "       call ext_fn",          // extern declared later
+      "done:  ret",
+      ".data",
+      "table: .word LATE, main, 7",
+      "       .byte SMALL, -1",
+      "counter: .skip 3",
+      "       .align 4",
+      ".extern ext_fn",
+      ".equ LATE, 0x1234",
+      ".equ SMALL, 0x12",
+      ".equ OFFSET, -2",
+  };
+
+  @Test
+  public void matchesTwoPassListing() throws IOException, SyntaxError {
+    assertSameOutput(OutputFormat.LISTING);
+  }
+
+  @Test
+  public void matchesTwoPassObjectFile() throws IOException, SyntaxError {
+    assertSameOutput(OutputFormat.OBJECT);
+  }
+
+  private static void assertSameOutput(OutputFormat format) throws IOException, SyntaxError {
+    byte[] twoPass = TestSources.assemble(AssemblerFactory.of(format, false), FORWARD_REFERENCES);
+    byte[] onePass = TestSources.assemble(AssemblerFactory.of(format, true), FORWARD_REFERENCES);
+    assertArrayEquals(twoPass, onePass);
+  }
+}
@@ -0,0 +1,259 @@
+package com.endava.mmarko;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+// valid sources of any size for tests and benchmarks. The same settings and seed always give the same
+// source, which is streamed line by line, so tens of millions of lines don't have to fit into memory.
+//
+// Every fourth section holds data (.word lines), the others code. Labels are spread evenly over the
+// lines, symbolic operands refer to labels and .equ constants, a share of them to labels defined further down.
+// A share of the constants and immediates can be written as expressions, a constant's refers to constants
+// defined after it, so they can't refer to each other in a circle.
+class ProgramGenerator {
+  enum AddressingMode {
+    REGISTER,           // r3
+    IMMEDIATE,          // 300
+    SYMBOL_IMMEDIATE,   // &label
+    MEMORY,             // *0x100
+    SYMBOL_MEMORY,      // label
+    REGISTER_INDIRECT,  // r2[]
+    REGISTER_OFFSET,    // r3[12], r3[label]
+    PC_RELATIVE,        // $label
+  }
+
+  private static final String[] TWO_OPERANDS = {"mov", "add", "sub", "cmp", "and", "xor"};
+  private static final String[] ONE_OPERAND = {"push", "jmp", "jne", "call"};
+  private static final AddressingMode[] MODES = AddressingMode.values();
+
+  private int lines = 10_000;
+  private double labelDensity = 0.1;
+  private int equs = 16;
+  private int sections = 8;
+  private double forwardReferences = 0.5;
+  private double expressions = 0;
+  private long seed = 42;
+  private final Map<AddressingMode, Integer> mix = new EnumMap<>(AddressingMode.class);
+
+  ProgramGenerator() {
+    for (AddressingMode mode : MODES) mix.put(mode, 1);
+  }
+
+  // everything up to and including .end
+  ProgramGenerator lines(int lines) {
+    this.lines = lines;
+    return this;
+  }
+
+  // share of the lines in sections that have a label
+  ProgramGenerator labelDensity(double labelDensity) {
+    this.labelDensity = labelDensity;
+    return this;
+  }
+
+  ProgramGenerator equs(int equs) {
+    this.equs = equs;
+    return this;
+  }
+
+  ProgramGenerator sections(int sections) {
+    this.sections = sections;
+    return this;
+  }
+
+  // share of the label references to labels that aren't defined yet
+  ProgramGenerator forwardReferences(double forwardReferences) {
+    this.forwardReferences = forwardReferences;
+    return this;
+  }
+
+  // share of the constants and immediate operands written as expressions instead of numbers
+  ProgramGenerator expressions(double expressions) {
+    this.expressions = expressions;
+    return this;
+  }
+
+  // relative weight of an addressing mode among the operands, 1 for every mode by default
+  ProgramGenerator mix(AddressingMode mode, int weight) {
+    mix.put(mode, weight);
+    return this;
+  }
+
+  ProgramGenerator seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  String generate() {
+    StringBuilder source = new StringBuilder();
+    try {
+      write(source);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringBuilder doesn't throw
+    }
+    return source.toString();
+  }
+
+  void write(Path path) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      write(out);
+    }
+  }
+
+  void write(Appendable out) throws IOException {
+    int bodyLines = lines - equs - sections - 1;
+    if (sections < 1 || bodyLines < 0) throw new IllegalArgumentException("Too few lines for the sections and constants");
+    new SourceWriter(out, bodyLines).write();
+  }
+
+  private class SourceWriter {
+    private final Appendable out;
+    private final Random random = new Random(seed);
+    private final StringBuilder line = new StringBuilder();
+    private final int bodyLines;
+    private final int labels;
+    private final int totalWeight;
+    private int defined;
+
+    SourceWriter(Appendable out, int bodyLines) {
+      this.out = out;
+      this.bodyLines = bodyLines;
+      labels = (int) (bodyLines * labelDensity);
+      int weight = 0;
+      for (int w : mix.values()) weight += w;
+      if (weight <= 0) throw new IllegalArgumentException("No addressing modes");
+      totalWeight = weight;
+    }
+
+    void write() throws IOException {
+      for (int i = 0; i < equs; i++) {
+        line.append(".equ K_").append(i).append(", ");
+        if (i + 1 < equs && random.nextDouble() < expressions) {
+          line.append("K_").append(i + 1 + random.nextInt(equs - i - 1)).append(" * 3 + ").append(random.nextInt(0x100));
+        } else {
+          line.append(random.nextInt(0x10000));
+        }
+        flush();
+      }
+
+      int body = 0;
+      for (int section = 0; section < sections; section++) {
+        boolean data = section % 4 == 3;
+        line.append(".section ").append(data ? "data_" : "code_").append(section).append(data ? ", rw" : ", rx");
+        flush();
+
+        int end = (int) ((long) bodyLines * (section + 1) / sections);
+        for (; body < end; body++) {
+          // the label count grows evenly with the lines
+          if ((long) (body + 1) * labels / bodyLines > defined) line.append("l_").append(defined++).append(':');
+          line.append("  ");
+          if (data) dataLine();
+          else instruction();
+          flush();
+        }
+      }
+      out.append(".end\n");
+    }
+
+    private void dataLine() {
+      line.append(".word ");
+      appendSymbolOrNumber();
+      line.append(", ");
+      appendSymbolOrNumber();
+    }
+
+    private void instruction() {
+      if (random.nextInt(3) > 0) {
+        line.append(TWO_OPERANDS[random.nextInt(TWO_OPERANDS.length)]).append(' ');
+        operand(destination(nextMode()));
+        line.append(", ");
+        operand(nextMode());
+      } else {
+        String mnemonic = ONE_OPERAND[random.nextInt(ONE_OPERAND.length)];
+        line.append(mnemonic).append(' ');
+        // only push takes an immediate destination
+        operand(mnemonic.equals("push") ? nextMode() : destination(nextMode()));
+      }
+    }
+
+    private AddressingMode nextMode() {
+      int r = random.nextInt(totalWeight);
+      for (AddressingMode mode : MODES) {
+        r -= mix.get(mode);
+        if (r < 0) return mode;
+      }
+      throw new IllegalStateException();
+    }
+
+    private AddressingMode destination(AddressingMode mode) {
+      switch (mode) {
+        case IMMEDIATE: return AddressingMode.REGISTER;
+        case SYMBOL_IMMEDIATE: return AddressingMode.PC_RELATIVE;
+        default: return mode;
+      }
+    }
+
+    private void operand(AddressingMode mode) {
+      switch (mode) {
+        case REGISTER: line.append('r').append(random.nextInt(8)); break;
+        case IMMEDIATE:
+          if (random.nextDouble() >= expressions) line.append(random.nextInt(0x8000));
+          else if (equs > 0) line.append("(K_").append(random.nextInt(equs)).append(" << 1) | 1");
+          else line.append('(').append(random.nextInt(0x100)).append(" + 4) * 2");
+          break;
+        case SYMBOL_IMMEDIATE:
+          if (labels > 0 || equs > 0) line.append('&');
+          appendSymbolOrNumber();
+          break;
+        case MEMORY: line.append("*0x").append(Integer.toHexString(random.nextInt(0x10000))); break;
+        case SYMBOL_MEMORY:
+          if (!appendSymbol()) line.append("*0x").append(Integer.toHexString(random.nextInt(0x10000)));
+          break;
+        case REGISTER_INDIRECT: line.append('r').append(random.nextInt(8)).append("[]"); break;
+        case REGISTER_OFFSET:
+          line.append('r').append(random.nextInt(8)).append('[');
+          if (random.nextBoolean() || !appendSymbol()) line.append(random.nextInt(0x100));
+          line.append(']');
+          break;
+        case PC_RELATIVE:
+          if (labels == 0) line.append('r').append(random.nextInt(8));
+          else line.append('$').append("l_").append(label());
+          break;
+      }
+    }
+
+    // falls back to a number when there are no symbols at all
+    private void appendSymbolOrNumber() {
+      if (!appendSymbol()) line.append(random.nextInt(0x8000));
+    }
+
+    // a label or, one time in four, a constant
+    private boolean appendSymbol() {
+      if (labels > 0 && (equs == 0 || random.nextInt(4) > 0)) {
+        line.append("l_").append(label());
+      } else if (equs > 0) {
+        line.append("K_").append(random.nextInt(equs));
+      } else {
+        return false;
+      }
+      return true;
+    }
+
+    private int label() {
+      boolean forward = defined == 0 || defined < labels && random.nextDouble() < forwardReferences;
+      return forward ? defined + random.nextInt(labels - defined) : random.nextInt(defined);
+    }
+
+    private void flush() throws IOException {
+      out.append(line).append('\n');
+      line.setLength(0);
+    }
+  }
+}
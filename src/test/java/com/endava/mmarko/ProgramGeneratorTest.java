@@ -0,0 +1,40 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class ProgramGeneratorTest {
+  @Test
+  public void generatesTheRequestedLinesReproducibly() {
+    ProgramGenerator generator = new ProgramGenerator().lines(5000).sections(7).equs(30);
+    String source = generator.generate();
+    assertEquals(5000, source.split("\n").length);
+    assertEquals(source, generator.generate());
+    assertFalse(source.equals(generator.seed(7).generate()));
+  }
+
+  @Test
+  public void generatedSourcesAssemble() throws IOException, SyntaxError {
+    assertAssembles(new ProgramGenerator());
+    assertAssembles(new ProgramGenerator().forwardReferences(1).labelDensity(0.5));
+    assertAssembles(new ProgramGenerator().forwardReferences(0).sections(1));
+    assertAssembles(new ProgramGenerator().labelDensity(0).equs(0));
+    assertAssembles(new ProgramGenerator().expressions(0.5));
+    assertAssembles(new ProgramGenerator().expressions(1).equs(0));
+    assertAssembles(new ProgramGenerator().mix(ProgramGenerator.AddressingMode.REGISTER, 0)
+        .mix(ProgramGenerator.AddressingMode.PC_RELATIVE, 10));
+  }
+
+  // and both assemblers agree on the output
+  private static void assertAssembles(ProgramGenerator generator) throws IOException, SyntaxError {
+    String[] lines = generator.lines(3000).generate().split("\n");
+    for (OutputFormat format : OutputFormat.values()) {
+      assertArrayEquals(TestSources.assemble(AssemblerFactory.of(format, false), lines),
+          TestSources.assemble(AssemblerFactory.of(format, true), lines));
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class RelocationTableTest {
+  @Test
+  public void keepsReservedSlotsInOrderAndNamesOnce() {
+    RelocationTable table = new RelocationTable();
+    table.add(1, RelocationType.R_16, 0, "start");
+    int late = table.reserve();
+    table.reserve(); // never set
+    for (int i = 0; i < 100; i++) table.add(10 + i, RelocationType.R_PC8, -1, "ext");
+    table.set(late, 4, RelocationType.R_8, 1, "start");
+    table.removeUnset();
+
+    assertEquals(102, table.size());
+    assertEquals(4, table.getOffset(1));
+    assertEquals(RelocationType.R_8, table.getType(1));
+    assertEquals(RelocationType.R_PC8.getCode(), table.getTypeCode(2));
+    assertEquals(-1, table.getSection(2));
+    assertEquals("ext", table.getSymbol(101));
+    assertEquals(Arrays.asList("start", "ext"), table.getSymbolNames());
+  }
+
+  @Test
+  public void printsListingRows() throws IOException {
+    RelocationTable table = new RelocationTable();
+    table.add(0x1c, RelocationType.R_PC16, 2, "loop");
+    table.add(3, RelocationType.R_8, -1, "ext");
+    StringWriter out = new StringWriter();
+    table.copy().print(out);
+    assertEquals("    000000001c\t\tR_PC16\t\t2\t\tloop\n    0000000003\t\tR_8\t\tund\t\text\n", out.toString());
+  }
+}
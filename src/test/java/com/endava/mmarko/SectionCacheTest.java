@@ -0,0 +1,63 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class SectionCacheTest {
+  private final SectionCache cache = new SectionCache();
+
+  @Test
+  public void reencodesOnlyChangedSections() throws IOException, SyntaxError {
+    assertSame(program("1", "0x10", "targets"));
+    assertCounts(0, 4);
+
+    assertSame(program("1", "0x10", "targets"));
+    assertCounts(4, 4);
+
+    // a changed line
+    assertSame(program("2", "0x10", "targets"));
+    assertCounts(7, 5);
+
+    // a constant used by one section
+    assertSame(program("2", "0x20", "targets"));
+    assertCounts(10, 6);
+
+    // a label moving to another section, both sections changed and so did the one using it
+    assertSame(program("2", "0x20", "text"));
+    assertCounts(11, 9);
+  }
+
+  private void assertSame(String[] program) throws IOException, SyntaxError {
+    for (OutputFormat format : OutputFormat.values()) {
+      assertArrayEquals(TestSources.assemble(AssemblerFactory.of(format, false), program),
+          TestSources.assemble(AssemblerFactory.incremental(format, cache), program));
+    }
+  }
+
+  // hits and misses of one format, the other one finds every section in the cache
+  private void assertCounts(long hits, long misses) {
+    long runs = hits + misses;
+    assertEquals(misses, cache.getMisses());
+    assertEquals(hits + runs, cache.getHits());
+  }
+
+  private static String[] program(String changed, String constant, String targetSection) {
+    return new String[] {
+        ".equ K, " + constant,
+        ".text",
+        "  movw r1, " + changed,
+        targetSection.equals("text") ? "target: halt" : "  halt",
+        ".section consts, \"r\"",
+        "  .word K, 3",
+        "  add r2, &K",
+        ".section refs, \"r\"",
+        "  .word target",
+        "  jmp $target",
+        ".section targets, \"rx\"",
+        targetSection.equals("targets") ? "target: ret" : "  ret",
+    };
+  }
+}
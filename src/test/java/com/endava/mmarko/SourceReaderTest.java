@@ -0,0 +1,45 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class SourceReaderTest {
+  @Test
+  public void splitsLinesAndDropsTerminators() {
+    SourceReader reader = reader("mov r1, r2\r\n\n  halt ; kraj\r\nlast");
+    assertEquals("mov r1, r2", reader.readLine().toString());
+    assertEquals("", reader.readLine().toString());
+    assertEquals("  halt ; kraj", reader.readLine().toString());
+    assertEquals("last", reader.readLine().toString());
+    assertNull(reader.readLine());
+  }
+
+  @Test
+  public void decodesNonAsciiLines() {
+    SourceReader reader = reader("; čćž\nhalt\n");
+    assertEquals("; čćž", reader.readLine().toString());
+    assertEquals("halt", reader.readLine().toString());
+    assertNull(reader.readLine());
+  }
+
+  @Test
+  public void asciiLinesAreViews() {
+    CharSequence line = reader("label: .word 1, 2\n").readLine();
+    assertEquals(17, line.length());
+    assertEquals('.', line.charAt(7));
+    assertEquals(".word", line.subSequence(7, 12).toString());
+    assertTrue(SourceReader.contains(line, "word"));
+    assertFalse(SourceReader.contains(line, ".end"));
+    assertTrue(SourceReader.isBlank(reader(" \t\r\n").readLine()));
+  }
+
+  private static SourceReader reader(String source) {
+    return new SourceReader(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,62 @@
+package com.endava.mmarko;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class SymbolTableTest {
+
+  @Test
+  public void findsSymbolsAndKeepsDefinitionOrder() throws SyntaxError {
+    SymbolTable table = new SymbolTable();
+    SectionLocation location = new SectionLocation();
+    location.incrementSection();
+    table.add("second", location);
+    location.incrementOffset(4);
+    table.add("first", location);
+    table.setGlobal("first");
+
+    assertEquals(4, table.find("first").getOffset());
+    assertNull(table.find("third"));
+    String listing = table.toString();
+    assertTrue(listing.indexOf("second") < listing.indexOf("first"));
+    assertTrue(listing.contains("global"));
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void rejectsDuplicateLabels() throws SyntaxError {
+    SymbolTable table = new SymbolTable();
+    table.add("dup", new SectionLocation());
+    table.add("dup", new SectionLocation());
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void rejectsGlobalOfUndefinedSymbol() throws SyntaxError {
+    new SymbolTable().setGlobal("missing");
+  }
+
+  @Test
+  public void findsAndRejectsDuplicatesAmongManyLabels() throws SyntaxError {
+    int count = 100_000;
+    SymbolTable table = new SymbolTable();
+    SectionLocation location = new SectionLocation();
+    location.incrementSection();
+    for (int i = 0; i < count; i++) {
+      table.add("l" + i, location);
+      location.incrementOffset();
+    }
+
+    for (int i = 0; i < count; i++) assertEquals(i, table.find("l" + i).getOffset());
+    assertNull(table.find("l" + count));
+    try {
+      table.add("l" + (count / 2), location);
+      fail();
+    } catch (SyntaxError e) {
+      assertEquals("Symbol already defined: l" + (count / 2), e.getMessage());
+    }
+    assertEquals(count, table.getSymbols().size());
+  }
+}
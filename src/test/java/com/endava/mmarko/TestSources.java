@@ -0,0 +1,30 @@
+package com.endava.mmarko;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+final class TestSources {
+  private TestSources() {
+  }
+
+  // assembles the lines (.end is appended) and returns the raw output file
+  static byte[] assemble(AssemblerFactory factory, String... lines) throws IOException, SyntaxError {
+    File input = File.createTempFile("source", ".s");
+    File output = File.createTempFile("output", ".out");
+    try {
+      try (PrintWriter writer = new PrintWriter(input)) {
+        for (String line : lines) writer.println(line);
+        writer.println(".end");
+      }
+      try (Assembler as = factory.create(input.getPath(), output.getPath())) {
+        as.assemble();
+      }
+      return Files.readAllBytes(output.toPath());
+    } finally {
+      input.delete();
+      output.delete();
+    }
+  }
+}